@@ -0,0 +1,51 @@
+package br.com.concretesolutions.requestmatcher;
+
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Collections;
+
+import okhttp3.Headers;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * Builds {@link RecordedRequest}s without a server so benchmarks only measure the library.
+ */
+final class BenchmarkRequests {
+
+    static RecordedRequest request(String method, String path, Headers headers, byte[] body) {
+        return new RecordedRequest(method + ' ' + path + " HTTP/1.1", headers,
+                Collections.singletonList(body.length), body.length, new Buffer().write(body), 0,
+                new LoopbackSocket());
+    }
+
+    static byte[] body(int size) {
+
+        final byte[] body = new byte[size];
+
+        for (int i = 0; i < size; i++) {
+            body[i] = (byte) ('a' + i % 26);
+        }
+
+        return body;
+    }
+
+    /**
+     * An unconnected socket that looks like a local connection.
+     */
+    private static final class LoopbackSocket extends Socket {
+
+        @Override
+        public InetAddress getInetAddress() {
+            return InetAddress.getLoopbackAddress();
+        }
+
+        @Override
+        public InetAddress getLocalAddress() {
+            return InetAddress.getLoopbackAddress();
+        }
+    }
+
+    private BenchmarkRequests() {
+    }
+}
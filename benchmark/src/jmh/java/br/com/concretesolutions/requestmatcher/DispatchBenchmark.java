@@ -0,0 +1,102 @@
+package br.com.concretesolutions.requestmatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Headers;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.hamcrest.Matchers.containsString;
+
+/**
+ * {@link MatcherDispatcher#dispatch(RecordedRequest)} as the number of stubs, the body size and
+ * the position of the matching stub vary.
+ * <p>
+ * Untagged stubs are tried in hash order so the position of the match is expressed as:
+ * <ul>
+ * <li>ROUTED: stubs are tagged with routing keys, only the matching one is evaluated</li>
+ * <li>HIT: stubs are untagged, on average half of them are evaluated before the match</li>
+ * <li>MISS: no stub matches, all of them are evaluated</li>
+ * </ul>
+ * The dispatcher runs in load target mode so stubs are reused and misses are only counted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+
+    public enum Match {
+        ROUTED, HIT, MISS
+    }
+
+    private static final String ROUTING_HEADER = "X-Operation";
+
+    @Param({"1", "10", "100", "1000"})
+    public int stubCount;
+
+    @Param({"0", "1024", "65536"})
+    public int bodySize;
+
+    @Param({"ROUTED", "HIT", "MISS"})
+    public Match match;
+
+    private MatcherDispatcher dispatcher;
+    private RecordedRequest request;
+
+    @Setup
+    public void setUp() {
+
+        dispatcher = new MatcherDispatcher();
+        dispatcher.setLoadTarget(Integer.MAX_VALUE);
+
+        if (match == Match.ROUTED) {
+            dispatcher.setRoutingKeyExtractor(RoutingKeys.header(ROUTING_HEADER));
+        }
+
+        for (int i = 0; i < stubCount; i++) {
+
+            final RequestMatchersGroup group = dispatcher.addFixture(new MockResponse().setBody("{}"))
+                    .pathIs("/items/" + i)
+                    .headersContain("accept", "application/json");
+
+            if (bodySize > 0) {
+                group.bodyMatches(containsString("z"));
+            }
+
+            if (match == Match.ROUTED) {
+                group.routingKeyIs("operation" + i);
+            }
+        }
+
+        final int target = match == Match.MISS ? stubCount : stubCount / 2;
+
+        request = BenchmarkRequests.request("POST", "/items/" + target,
+                Headers.of("Accept", "application/json", ROUTING_HEADER, "operation" + target),
+                BenchmarkRequests.body(bodySize));
+
+        // index the stubs and describe the first miss outside of the measurement
+        dispatcher.dispatch(request, 0);
+
+        // a stub that never matches would turn every case into a miss
+        final boolean matched = dispatcher.getUnmatchedCount() == 0;
+
+        if (matched != (match != Match.MISS)) {
+            throw new IllegalStateException("Expected a " + match + " but the request "
+                    + (matched ? "matched" : "did not match"));
+        }
+    }
+
+    @Benchmark
+    public MockResponse dispatch() {
+        return dispatcher.dispatch(request, 0);
+    }
+}
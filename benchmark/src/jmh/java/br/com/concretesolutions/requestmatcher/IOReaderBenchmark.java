@@ -0,0 +1,48 @@
+package br.com.concretesolutions.requestmatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixture loading through {@link IOReader} as the fixture size varies. Text fixtures have a line
+ * break every 80 bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IOReaderBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    public int fixtureSize;
+
+    private byte[] fixture;
+
+    @Setup
+    public void setUp() {
+
+        fixture = BenchmarkRequests.body(fixtureSize);
+
+        for (int i = 79; i < fixture.length; i += 80) {
+            fixture[i] = '\n';
+        }
+    }
+
+    @Benchmark
+    public String read() {
+        return IOReader.read(new ByteArrayInputStream(fixture));
+    }
+
+    @Benchmark
+    public byte[] readBinary() {
+        return IOReader.readBinary(new ByteArrayInputStream(fixture));
+    }
+}
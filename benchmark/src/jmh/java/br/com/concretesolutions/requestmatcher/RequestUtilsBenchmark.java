@@ -0,0 +1,79 @@
+package br.com.concretesolutions.requestmatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import br.com.concretesolutions.requestmatcher.model.HttpMethod;
+import okhttp3.Headers;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * The parsing helpers run for every request: {@link RequestUtils} and
+ * {@link HttpMethod#forRequest(RecordedRequest)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestUtilsBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int entries;
+
+    private String path;
+    private Headers headers;
+    private RecordedRequest request;
+    private RecordedRequest lastMethodRequest;
+
+    @Setup
+    public void setUp() {
+
+        final StringBuilder pathBuilder = new StringBuilder("/some/resource/path?");
+        final Headers.Builder headersBuilder = new Headers.Builder();
+
+        for (int i = 0; i < entries; i++) {
+            pathBuilder.append(i == 0 ? "" : "&").append("key").append(i).append("=value").append(i);
+            headersBuilder.add("Header-" + i, "value" + i);
+            // repeated headers are joined
+            headersBuilder.add("Header-" + i, "other" + i);
+        }
+
+        path = pathBuilder.toString();
+        headers = headersBuilder.build();
+        request = BenchmarkRequests.request("GET", path, headers, new byte[0]);
+        lastMethodRequest = BenchmarkRequests.request("MOVE", path, headers, new byte[0]);
+    }
+
+    @Benchmark
+    public Map<String, String> buildQueryMap() {
+        return RequestUtils.buildQueryMap(path);
+    }
+
+    @Benchmark
+    public Map<String, String> buildHeadersMap() {
+        return RequestUtils.buildHeadersMap(headers);
+    }
+
+    @Benchmark
+    public String getPathOnly() {
+        return RequestUtils.getPathOnly(request);
+    }
+
+    @Benchmark
+    public HttpMethod forRequestFirstMethod() {
+        return HttpMethod.forRequest(request);
+    }
+
+    @Benchmark
+    public HttpMethod forRequestLastMethod() {
+        return HttpMethod.forRequest(lastMethodRequest);
+    }
+}
@@ -0,0 +1,172 @@
+package br.com.concretesolutions.requestmatcher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * How much of each request body the {@link RequestJournal} keeps.
+ */
+public final class BodyRetention {
+
+    private static final Logger logger = Logger.getLogger(BodyRetention.class.getName());
+
+    private static final long UNBOUNDED = -1;
+    private static final long SPILLED_PREVIEW_BYTES = 1024;
+
+    private final long maxBytes;
+    private final long spillThreshold;
+    private final File spillDirectory;
+
+    private BodyRetention(long maxBytes, long spillThreshold, File spillDirectory) {
+        this.maxBytes = maxBytes;
+        this.spillThreshold = spillThreshold;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Keeps no body at all. Only its size is recorded.
+     */
+    public static BodyRetention none() {
+        return new BodyRetention(0, UNBOUNDED, null);
+    }
+
+    /**
+     * Keeps every body in full. Memory grows with the journal capacity times the body sizes.
+     */
+    public static BodyRetention full() {
+        return new BodyRetention(UNBOUNDED, UNBOUNDED, null);
+    }
+
+    /**
+     * Keeps at most the first maxBytes of each body.
+     */
+    public static BodyRetention upTo(long maxBytes) {
+
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must not be negative");
+        }
+
+        return new BodyRetention(maxBytes, UNBOUNDED, null);
+    }
+
+    /**
+     * Keeps bodies up to threshold bytes in memory and writes bigger ones to a temporary file in
+     * the default temporary directory. See {@link #spillToDisk(long, File)}.
+     */
+    public static BodyRetention spillToDisk(long threshold) {
+        return spillToDisk(threshold, null);
+    }
+
+    /**
+     * Keeps bodies up to threshold bytes in memory and writes bigger ones to a temporary file.
+     * Only a SHA-256 digest and a 1 KiB preview of a spilled body stay in memory. Read it back
+     * with {@link RequestJournal.Entry#openBody()}. Files are deleted when their request leaves
+     * the journal or the test finishes.
+     *
+     * @param threshold Biggest body kept in memory
+     * @param directory Where to create the files or null for the default temporary directory
+     */
+    public static BodyRetention spillToDisk(long threshold, File directory) {
+
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold must not be negative");
+        }
+
+        return new BodyRetention(UNBOUNDED, threshold, directory);
+    }
+
+    /**
+     * Copies the retained part of the body without consuming it.
+     */
+    RetainedBody retain(Buffer body) {
+
+        if (spillThreshold != UNBOUNDED && body.size() > spillThreshold) {
+            final RetainedBody spilled = spill(body);
+
+            if (spilled != null) {
+                return spilled;
+            }
+        }
+
+        final long byteCount = maxBytes == UNBOUNDED ? body.size() : Math.min(body.size(), maxBytes);
+        return new RetainedBody(copy(body, byteCount), null, null);
+    }
+
+    private RetainedBody spill(Buffer body) {
+
+        File file = null;
+
+        try {
+            file = File.createTempFile("requestmatcher-body", ".bin", spillDirectory);
+
+            final OutputStream out = new FileOutputStream(file);
+
+            try {
+                body.copyTo(out);
+            } finally {
+                out.close();
+            }
+
+            return new RetainedBody(copy(body, Math.min(body.size(), SPILLED_PREVIEW_BYTES)),
+                    body.sha256(), file);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not spill request body to disk. Keeping a preview.", e);
+
+            if (file != null && !file.delete()) {
+                file.deleteOnExit();
+            }
+
+            return null;
+        }
+    }
+
+    private static ByteString copy(Buffer body, long byteCount) {
+
+        if (byteCount == 0) {
+            return ByteString.EMPTY;
+        }
+
+        final Buffer retained = new Buffer();
+        body.copyTo(retained, 0, byteCount);
+        return retained.readByteString();
+    }
+
+    @Override
+    public String toString() {
+
+        if (spillThreshold != UNBOUNDED) {
+            return "BodyRetention{spillThreshold=" + spillThreshold + '}';
+        }
+
+        return maxBytes == UNBOUNDED ? "BodyRetention{full}" : "BodyRetention{upTo=" + maxBytes + '}';
+    }
+
+    /**
+     * The part of a body kept in memory and, if it was spilled, the file with all of it.
+     */
+    static final class RetainedBody {
+
+        final ByteString bytes;
+        final ByteString digest;
+        final File file;
+
+        RetainedBody(ByteString bytes, ByteString digest, File file) {
+            this.bytes = bytes;
+            this.digest = digest;
+            this.file = file;
+        }
+
+        void discard() {
+            if (file != null && !file.delete() && file.exists()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package br.com.concretesolutions.requestmatcher;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+import okio.BufferedSink;
+
+/**
+ * Writes the body of a computed response straight into an okio buffer. Its segments come from
+ * okio's segment pool and go back to it once the body is sent, so computed responses don't
+ * build intermediate strings.
+ * <p>
+ * Register it with {@link RequestMatcherRule#respondWith(okhttp3.mockwebserver.MockResponse,
+ * BodyWriter)}. Writers may be called concurrently by the server threads.
+ */
+public interface BodyWriter {
+
+    /**
+     * @param request The request being served
+     * @param body    Where to write the body
+     * @throws IOException to fail the test with the error
+     */
+    void write(@NonNull ParsedRequest request, @NonNull BufferedSink body) throws IOException;
+}
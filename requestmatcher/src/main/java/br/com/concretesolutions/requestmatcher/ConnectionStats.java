@@ -0,0 +1,129 @@
+package br.com.concretesolutions.requestmatcher;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How the requests of a test were spread over connections, taken from
+ * {@link okhttp3.mockwebserver.RecordedRequest#getSequenceNumber()}: a request with sequence
+ * number 0 is the first one of a new connection. A client that stops reusing its pooled
+ * connections opens one connection per request.
+ * <p>
+ * On a server borrowed from a {@link MockWebServerPool} the client may reuse connections opened
+ * by earlier tests. Only the requests of this test count: the first one it sends on such a
+ * connection counts as a new connection.
+ * <p>
+ * Always recorded, it costs a couple of atomic increments per request, and a short lock on a
+ * borrowed server. Check it at the end of a
+ * test with {@link RequestMatcherRule#assertMaxConnections(int)} and
+ * {@link RequestMatcherRule#assertConnectionReuse()}.
+ */
+public final class ConnectionStats {
+
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong maxRequestsPerConnection = new AtomicLong();
+
+    // next sequence number of a connection -> sequence numbers of the first request of the test
+    // on the connections expecting it
+    private final Map<Integer, Deque<Integer>> waitingConnections = new HashMap<>();
+    private volatile boolean usedServer;
+
+    /**
+     * Measures only from the next request: the server may have connections opened before.
+     */
+    void startOnUsedServer() {
+        usedServer = true;
+    }
+
+    void record(int sequenceNumber) {
+
+        requests.incrementAndGet();
+
+        final long carried = usedServer ? carriedByTest(sequenceNumber) : sequenceNumber + 1L;
+
+        if (carried == 1) {
+            connections.incrementAndGet();
+        }
+
+        long max;
+
+        while (carried > (max = maxRequestsPerConnection.get())) {
+            if (maxRequestsPerConnection.compareAndSet(max, carried)) {
+                break;
+            }
+        }
+    }
+
+    // the requests of this test carried by the connection of the request, itself included
+    private synchronized long carriedByTest(int sequenceNumber) {
+
+        final Deque<Integer> waiting = waitingConnections.get(sequenceNumber);
+        Integer first = waiting != null ? waiting.poll() : null;
+
+        if (waiting != null && waiting.isEmpty()) {
+            waitingConnections.remove(sequenceNumber);
+        }
+
+        if (first == null) {
+            // no connection of this test expected it: the first request of the test on it
+            first = sequenceNumber;
+        }
+
+        Deque<Integer> next = waitingConnections.get(sequenceNumber + 1);
+
+        if (next == null) {
+            next = new ArrayDeque<>();
+            waitingConnections.put(sequenceNumber + 1, next);
+        }
+
+        next.add(first);
+        return sequenceNumber - first + 1L;
+    }
+
+    /**
+     * Number of connections the client opened.
+     */
+    public long getConnectionCount() {
+        return connections.get();
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Mean number of requests carried by each connection.
+     */
+    public double getRequestsPerConnection() {
+        final long opened = connections.get();
+        return opened == 0 ? 0 : (double) requests.get() / opened;
+    }
+
+    /**
+     * The most requests a single connection carried.
+     */
+    public long getMaxRequestsPerConnection() {
+        return maxRequestsPerConnection.get();
+    }
+
+    /**
+     * Share of the requests, between 0 and 1, sent on a connection that had already carried
+     * another request.
+     */
+    public double getReuseRatio() {
+        final long total = requests.get();
+        return total == 0 ? 0 : (double) (total - connections.get()) / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%d requests on %d connections (%.1f per connection, "
+                        + "max %d, reuse ratio %.2f)", getRequestCount(), getConnectionCount(),
+                getRequestsPerConnection(), getMaxRequestsPerConnection(), getReuseRatio());
+    }
+}
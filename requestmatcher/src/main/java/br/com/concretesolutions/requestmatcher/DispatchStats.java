@@ -0,0 +1,242 @@
+package br.com.concretesolutions.requestmatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and histograms of a {@link MatcherDispatcher}: how many candidates were evaluated per
+ * request, how long matching and the whole dispatch took and how many times each stub was hit
+ * or evaluated without matching. Tells whether a slow test is slow because of the client or
+ * because of the matchers.
+ * <p>
+ * Recording is lock free and allocation free. Enable it with
+ * {@link RequestMatcherRule#withDispatchStats(boolean)}.
+ */
+public final class DispatchStats {
+
+    private final Queue<MatcherDispatcher.ResponseWithMatcher> stubs = new ConcurrentLinkedQueue<>();
+    private final Histogram candidates = new Histogram();
+    private final Histogram matchingTime = new Histogram();
+    private final Histogram dispatchTime = new Histogram();
+
+    void register(MatcherDispatcher.ResponseWithMatcher stub) {
+        stubs.add(stub);
+    }
+
+    void record(int candidatesTried, long matchingNanos, long dispatchNanos) {
+        candidates.record(candidatesTried);
+        matchingTime.record(matchingNanos);
+        dispatchTime.record(dispatchNanos);
+    }
+
+    public long getRequestCount() {
+        return dispatchTime.getCount();
+    }
+
+    /**
+     * Number of stubs whose matchers were evaluated per request.
+     */
+    public Histogram getCandidatesPerRequest() {
+        return candidates;
+    }
+
+    /**
+     * Nanoseconds spent evaluating the matchers of the candidates per request.
+     */
+    public Histogram getMatchingTime() {
+        return matchingTime;
+    }
+
+    /**
+     * Nanoseconds spent in the whole dispatch per request, including parsing, diagnostics and
+     * preparing the response.
+     */
+    public Histogram getDispatchTime() {
+        return dispatchTime;
+    }
+
+    /**
+     * Hits and misses of every stub added to the dispatcher, in the order they were added.
+     */
+    public List<StubStats> getStubs() {
+
+        final List<StubStats> stats = new ArrayList<>();
+
+        for (MatcherDispatcher.ResponseWithMatcher stub : stubs) {
+            stats.add(new StubStats(stub.getMatcher(), stub.hits.get(), stub.misses.get()));
+        }
+
+        return stats;
+    }
+
+    /**
+     * A human readable summary of all stats.
+     */
+    public String summary() {
+
+        final StringBuilder sb = new StringBuilder(200)
+                .append("Dispatched ").append(getRequestCount()).append(" requests\n")
+                .append(" - candidates per request: ").append(String.format(Locale.US,
+                        "mean %.1f, p50 %d, p99 %d, max %d", candidates.getMean(),
+                        candidates.getPercentile(50), candidates.getPercentile(99),
+                        candidates.getMax()))
+                .append("\n - matching time: ").append(describeTime(matchingTime))
+                .append("\n - dispatch time: ").append(describeTime(dispatchTime))
+                .append("\n - stubs:");
+
+        for (StubStats stub : getStubs()) {
+            sb.append("\n   hits=").append(stub.getHits())
+                    .append(" misses=").append(stub.getMisses())
+                    .append(' ').append(stub.getMatcher());
+        }
+
+        return sb.toString();
+    }
+
+    private static String describeTime(Histogram histogram) {
+        return "p50 " + micros(histogram.getPercentile(50))
+                + ", p99 " + micros(histogram.getPercentile(99))
+                + ", max " + micros(histogram.getMax());
+    }
+
+    private static String micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+    }
+
+    @Override
+    public String toString() {
+        return summary();
+    }
+
+    public static final class StubStats {
+
+        private final RequestMatchersGroup matcher;
+        private final long hits;
+        private final long misses;
+
+        StubStats(RequestMatchersGroup matcher, long hits, long misses) {
+            this.matcher = matcher;
+            this.hits = hits;
+            this.misses = misses;
+        }
+
+        public RequestMatchersGroup getMatcher() {
+            return matcher;
+        }
+
+        /**
+         * Number of requests served by this stub.
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * Number of requests this stub was evaluated for without matching.
+         */
+        public long getMisses() {
+            return misses;
+        }
+    }
+
+    /**
+     * A histogram of non negative values with logarithmic buckets. Each power of two is split in
+     * four buckets so a percentile is at most 25% above the real value. Recording is a couple of
+     * atomic increments.
+     */
+    public static final class Histogram {
+
+        private static final int SUB_BUCKET_BITS = 2;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE * SUB_BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long value) {
+
+            final long positive = Math.max(0, value);
+
+            buckets.incrementAndGet(indexOf(positive));
+            count.incrementAndGet();
+            total.addAndGet(positive);
+
+            long currentMax = max.get();
+
+            while (positive > currentMax && !max.compareAndSet(currentMax, positive)) {
+                currentMax = max.get();
+            }
+        }
+
+        static int indexOf(long value) {
+
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+
+            final int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+            final int subBucket = (int) (value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (highestBit - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        static long upperBoundOf(int index) {
+
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+
+            final int highestBit = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            final long width = 1L << (highestBit - SUB_BUCKET_BITS);
+            final long lowerBound = (1L << highestBit) | (index % SUB_BUCKETS) * width;
+            return lowerBound + width - 1;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public double getMean() {
+            final long recorded = count.get();
+            return recorded == 0 ? 0 : (double) total.get() / recorded;
+        }
+
+        /**
+         * The smallest bucket bound below which the given percentage of the values are.
+         *
+         * @param percentile A value between 0 and 100
+         */
+        public long getPercentile(double percentile) {
+
+            final long recorded = count.get();
+
+            if (recorded == 0) {
+                return 0;
+            }
+
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+            long seen = 0;
+
+            for (int i = 0; i < buckets.length(); i++) {
+
+                seen += buckets.get(i);
+
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), getMax());
+                }
+            }
+
+            return getMax();
+        }
+    }
+}
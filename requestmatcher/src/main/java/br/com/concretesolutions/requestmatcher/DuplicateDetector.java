@@ -0,0 +1,166 @@
+package br.com.concretesolutions.requestmatcher;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * Finds requests sent again within a window: same method, path, query parameters in any order
+ * and body. Redundant fetches, like two screens loading the same configuration, cost latency and
+ * battery without failing any matcher.
+ * <p>
+ * Requests are fingerprinted with a SHA-256 digest of their body, so bodies are not kept. Turn it
+ * on with {@link RequestMatcherRule#withDuplicateDetection(long, TimeUnit, boolean)}.
+ */
+public final class DuplicateDetector {
+
+    private static final int DIGEST_PREVIEW_LENGTH = 12;
+
+    private final long windowNanos;
+    private final ConcurrentMap<String, Long> lastSeen = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Episode> duplicates = new ConcurrentHashMap<>();
+
+    /**
+     * @param window How long after a request an identical one is a duplicate
+     * @param unit   The unit of the window
+     */
+    public DuplicateDetector(long window, TimeUnit unit) {
+
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+
+        this.windowNanos = unit.toNanos(window);
+    }
+
+    void record(ParsedRequest parsedRequest, long nanos) {
+
+        final String fingerprint = fingerprint(parsedRequest);
+        final Long previous = lastSeen.put(fingerprint, nanos);
+
+        Episode episode = duplicates.get(fingerprint);
+
+        if (previous == null || nanos - previous > windowNanos) {
+
+            // the request starts a new episode, the count of the previous one is kept as is
+            if (episode != null) {
+                episode.end();
+            }
+
+            return;
+        }
+
+        if (episode == null) {
+            final Episode newEpisode = new Episode();
+            episode = duplicates.putIfAbsent(fingerprint, newEpisode);
+
+            if (episode == null) {
+                episode = newEpisode;
+            }
+        }
+
+        episode.repeated();
+    }
+
+    /**
+     * The requests sent more than once within the window, with how many times they were sent.
+     * A request sent again later than the window starts a new episode, and the count is the one
+     * of the longest episode. Keys describe the method, path, sorted query and a prefix of the
+     * body digest.
+     */
+    public Map<String, Integer> getDuplicates() {
+
+        final Map<String, Integer> found = new LinkedHashMap<>();
+
+        for (Map.Entry<String, Episode> entry : duplicates.entrySet()) {
+            found.put(entry.getKey(), entry.getValue().longest());
+        }
+
+        return found;
+    }
+
+    /**
+     * A human readable list of the duplicates, or null if there are none.
+     */
+    String describe() {
+
+        if (duplicates.isEmpty()) {
+            return null;
+        }
+
+        final StringBuilder builder = new StringBuilder("Requests sent more than once within ")
+                .append(TimeUnit.NANOSECONDS.toMillis(windowNanos)).append("ms:");
+
+        for (Map.Entry<String, Integer> duplicate : getDuplicates().entrySet()) {
+            builder.append("\n - ").append(duplicate.getKey())
+                    .append(" sent ").append(duplicate.getValue()).append(" times");
+        }
+
+        return builder.toString();
+    }
+
+    private static String fingerprint(ParsedRequest parsedRequest) {
+
+        final RecordedRequest request = parsedRequest.getRequest();
+        final String fullPath = parsedRequest.getFullPath();
+        final int queryStart = fullPath.indexOf('?');
+        final StringBuilder fingerprint = new StringBuilder(request.getMethod())
+                .append(' ').append(parsedRequest.getPath());
+
+        // the same parameters in another order are the same request
+        if (queryStart != -1 && queryStart < fullPath.length() - 1) {
+
+            final String[] parameters = fullPath.substring(queryStart + 1).split("&");
+            Arrays.sort(parameters);
+
+            for (int i = 0; i < parameters.length; i++) {
+                fingerprint.append(i == 0 ? '?' : '&').append(parameters[i]);
+            }
+        }
+
+        final Buffer body = request.getBody();
+
+        if (body != null && body.size() > 0) {
+            // hashes the segments in place, the body is neither consumed nor copied
+            fingerprint.append(" body sha256 ")
+                    .append(body.sha256().hex(), 0, DIGEST_PREVIEW_LENGTH);
+        }
+
+        return fingerprint.toString();
+    }
+
+    /**
+     * Consecutive requests with the same fingerprint, each within the window of the previous one.
+     */
+    private static final class Episode {
+
+        private int current;
+        private int longest;
+
+        synchronized void repeated() {
+            // the first request of the episode counts as well
+            current = current == 0 ? 2 : current + 1;
+            longest = Math.max(longest, current);
+        }
+
+        synchronized void end() {
+            current = 0;
+        }
+
+        synchronized int longest() {
+            return longest;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DuplicateDetector{windowNanos=" + windowNanos + ", duplicates=" + getDuplicates()
+                + '}';
+    }
+}
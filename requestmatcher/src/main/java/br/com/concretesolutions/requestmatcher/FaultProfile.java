@@ -0,0 +1,210 @@
+package br.com.concretesolutions.requestmatcher;
+
+import java.util.Random;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.SocketPolicy;
+
+/**
+ * Network and server failures injected into a share of the requests a fixture matches. Each
+ * matching request draws at most one fault from a {@link Random} that can be seeded so a test
+ * run can be reproduced. A request that gets a fault does not consume the fixture, so the retry
+ * of a client can still be served by it.
+ * <p>
+ * Attach it to a fixture with {@link RequestMatcherRule.IfRequestMatches#withFaults(FaultProfile)}
+ * or to every fixture of a rule with {@link RequestMatcherRule#withDefaultFaults(FaultProfile)}:
+ * <pre>
+ * FaultProfile flaky = FaultProfile.builder()
+ *     .disconnect(2)
+ *     .serverError(5, 503)
+ *     .truncateBody(1)
+ *     .seed(42)
+ *     .build();
+ * </pre>
+ */
+public final class FaultProfile {
+
+    /**
+     * The kinds of faults a profile injects.
+     */
+    public enum Fault {
+        /**
+         * The connection is closed after the request is read, without a response.
+         */
+        DISCONNECT,
+        /**
+         * The request is read but no response is ever sent.
+         */
+        STALL,
+        /**
+         * A server error status with an empty body.
+         */
+        SERVER_ERROR,
+        /**
+         * The response of the fixture is sent but the connection is closed half way through its
+         * body.
+         */
+        TRUNCATED_BODY
+    }
+
+    private static final double MAX_PERCENT = 100;
+
+    private final double[] percents;
+    private final int serverErrorCode;
+    private final Random random;
+
+    private FaultProfile(Builder builder) {
+        this.percents = builder.percents.clone();
+        this.serverErrorCode = builder.serverErrorCode;
+        this.random = builder.seeded ? new Random(builder.seed) : new Random();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Draws the fault of the next request, or null if it should be served normally.
+     */
+    Fault next() {
+
+        final double draw;
+
+        // Random is thread safe but the sequence drawn is only reproducible when the draws of
+        // concurrent requests don't interleave
+        synchronized (random) {
+            draw = random.nextDouble() * MAX_PERCENT;
+        }
+
+        double threshold = 0;
+
+        for (Fault fault : Fault.values()) {
+            threshold += percents[fault.ordinal()];
+
+            if (draw < threshold) {
+                return fault;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * The response that injects the fault. Only {@link Fault#TRUNCATED_BODY} uses the response
+     * that would be served, which is not changed.
+     */
+    MockResponse inject(Fault fault, MockResponse response) {
+
+        switch (fault) {
+            case DISCONNECT:
+                return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+            case STALL:
+                return new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE);
+            case SERVER_ERROR:
+                return new MockResponse().setResponseCode(serverErrorCode);
+            default:
+                return response.clone()
+                        .setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+        }
+    }
+
+    @Override
+    public String toString() {
+
+        final StringBuilder builder = new StringBuilder("FaultProfile{");
+
+        for (Fault fault : Fault.values()) {
+            builder.append(fault).append('=').append(percents[fault.ordinal()]).append("%, ");
+        }
+
+        return builder.append("serverErrorCode=").append(serverErrorCode).append('}').toString();
+    }
+
+    public static final class Builder {
+
+        private final double[] percents = new double[Fault.values().length];
+        private int serverErrorCode = 503;
+        private long seed;
+        private boolean seeded;
+
+        private Builder() {
+        }
+
+        /**
+         * Percentage of requests whose connection is closed without a response.
+         */
+        public Builder disconnect(double percent) {
+            return percent(Fault.DISCONNECT, percent);
+        }
+
+        /**
+         * Percentage of requests that never get a response. Clients only recover from these
+         * through their read timeout.
+         */
+        public Builder stall(double percent) {
+            return percent(Fault.STALL, percent);
+        }
+
+        /**
+         * Percentage of requests answered with a 503.
+         */
+        public Builder serverError(double percent) {
+            return percent(Fault.SERVER_ERROR, percent);
+        }
+
+        /**
+         * Percentage of requests answered with the given 5xx status.
+         */
+        public Builder serverError(double percent, int code) {
+
+            if (code < 500 || code > 599) {
+                throw new IllegalArgumentException("code must be a 5xx status");
+            }
+
+            serverErrorCode = code;
+            return percent(Fault.SERVER_ERROR, percent);
+        }
+
+        /**
+         * Percentage of requests whose response body is cut half way through.
+         */
+        public Builder truncateBody(double percent) {
+            return percent(Fault.TRUNCATED_BODY, percent);
+        }
+
+        /**
+         * Seeds the random draws so the same requests get the same faults on every run.
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            this.seeded = true;
+            return this;
+        }
+
+        public FaultProfile build() {
+
+            double total = 0;
+
+            for (double percent : percents) {
+                total += percent;
+            }
+
+            if (total > MAX_PERCENT) {
+                throw new IllegalArgumentException("The percentages of faults add up to more "
+                        + "than 100: " + total);
+            }
+
+            return new FaultProfile(this);
+        }
+
+        private Builder percent(Fault fault, double percent) {
+
+            if (percent < 0 || percent > MAX_PERCENT) {
+                throw new IllegalArgumentException("percent must be between 0 and 100");
+            }
+
+            percents[fault.ordinal()] = percent;
+            return this;
+        }
+    }
+}
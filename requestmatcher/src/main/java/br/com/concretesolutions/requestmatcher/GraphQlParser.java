@@ -0,0 +1,199 @@
+package br.com.concretesolutions.requestmatcher;
+
+import java.util.Locale;
+import java.util.Map;
+
+import br.com.concretesolutions.requestmatcher.matchers.JsonPathPredicates;
+import br.com.concretesolutions.requestmatcher.model.GraphQlOperation;
+import okio.Buffer;
+
+/**
+ * Extracts the {@link GraphQlOperation} of a request. It does not validate the query document. It
+ * only scans the top level definitions for the selected operation.
+ */
+final class GraphQlParser {
+
+    private static final String QUERY = "query";
+    private static final String OPERATION_NAME = "operationName";
+    private static final String VARIABLES = "variables";
+    private static final String FRAGMENT = "fragment";
+
+    static GraphQlOperation parse(ParsedRequest request) {
+
+        final String document;
+        final String operationName;
+        final Object variables;
+
+        if ("GET".equals(request.getRequest().getMethod())) {
+
+            final String path = request.getRequest().getPath();
+            final int queryStart = path.indexOf('?');
+
+            if (queryStart == -1) {
+                return null;
+            }
+
+            // the query map is not decoded and GraphQL documents are always encoded
+            final Map<String, String> queries =
+                    RequestUtils.buildFormMap(new Buffer().writeUtf8(path.substring(queryStart + 1)));
+            document = queries.get(QUERY);
+            operationName = queries.get(OPERATION_NAME);
+            variables = queries.containsKey(VARIABLES)
+                    ? JsonPathPredicates.parse(queries.get(VARIABLES))
+                    : null;
+        } else {
+
+            final Object json = request.getJsonDocument();
+
+            if (!(json instanceof Map)) {
+                return null;
+            }
+
+            final Map<?, ?> body = (Map<?, ?>) json;
+            document = stringOrNull(body.get(QUERY));
+            operationName = stringOrNull(body.get(OPERATION_NAME));
+            variables = body.get(VARIABLES);
+        }
+
+        if (document == null) {
+            return null;
+        }
+
+        return new Scanner(document).find(operationName, variables);
+    }
+
+    private static String stringOrNull(Object value) {
+        return value instanceof String ? (String) value : null;
+    }
+
+    /**
+     * Walks the top level of a document skipping selection sets, arguments, strings and comments.
+     */
+    private static final class Scanner {
+
+        private final String document;
+        private int position;
+
+        Scanner(String document) {
+            this.document = document;
+        }
+
+        GraphQlOperation find(String operationName, Object variables) {
+
+            int depth = 0;
+            boolean inFragment = false;
+
+            while (position < document.length()) {
+
+                final char c = document.charAt(position);
+
+                if (c == '#') {
+                    skipComment();
+                } else if (c == '"') {
+                    skipString();
+                } else if (c == '{' || c == '(' || c == '[') {
+
+                    // a selection set at the top level is an anonymous query, unless it is the
+                    // one of a fragment definition
+                    if (depth == 0 && c == '{' && !inFragment && operationName == null) {
+                        return new GraphQlOperation(null, GraphQlOperation.Type.QUERY, document, variables);
+                    }
+
+                    if (depth == 0 && c == '{') {
+                        inFragment = false;
+                    }
+
+                    depth++;
+                    position++;
+                } else if (c == '}' || c == ')' || c == ']') {
+                    depth--;
+                    position++;
+                } else if (depth == 0 && isNameStart(c)) {
+
+                    final String keyword = readName();
+
+                    if (FRAGMENT.equals(keyword)) {
+                        inFragment = true;
+                    } else if (isOperationType(keyword)) {
+                        skipIgnored();
+                        final String name = position < document.length()
+                                && isNameStart(document.charAt(position)) ? readName() : null;
+
+                        if (operationName == null || operationName.equals(name)) {
+                            final GraphQlOperation.Type type =
+                                    GraphQlOperation.Type.valueOf(keyword.toUpperCase(Locale.US));
+                            return new GraphQlOperation(name, type, document, variables);
+                        }
+                    }
+                } else {
+                    position++;
+                }
+            }
+
+            return null;
+        }
+
+        private static boolean isOperationType(String keyword) {
+            return "query".equals(keyword) || "mutation".equals(keyword)
+                    || "subscription".equals(keyword);
+        }
+
+        private static boolean isNameStart(char c) {
+            return c == '_' || c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z';
+        }
+
+        private static boolean isNamePart(char c) {
+            return isNameStart(c) || c >= '0' && c <= '9';
+        }
+
+        private String readName() {
+
+            final int start = position;
+
+            while (position < document.length() && isNamePart(document.charAt(position))) {
+                position++;
+            }
+
+            return document.substring(start, position);
+        }
+
+        private void skipIgnored() {
+            while (position < document.length()
+                    && (Character.isWhitespace(document.charAt(position))
+                    || document.charAt(position) == ',')) {
+                position++;
+            }
+        }
+
+        private void skipComment() {
+            while (position < document.length() && document.charAt(position) != '\n') {
+                position++;
+            }
+        }
+
+        private void skipString() {
+
+            if (document.startsWith("\"\"\"", position)) {
+                final int end = document.indexOf("\"\"\"", position + 3);
+                position = end == -1 ? document.length() : end + 3;
+                return;
+            }
+
+            position++;
+
+            while (position < document.length()) {
+
+                final char c = document.charAt(position++);
+
+                if (c == '\\') {
+                    position++;
+                } else if (c == '"') {
+                    return;
+                }
+            }
+        }
+    }
+
+    private GraphQlParser() {
+    }
+}
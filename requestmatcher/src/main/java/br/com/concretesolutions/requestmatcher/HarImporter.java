@@ -0,0 +1,370 @@
+package br.com.concretesolutions.requestmatcher;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import br.com.concretesolutions.requestmatcher.model.HttpMethod;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.MockResponse;
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * Turns the entries of a HAR (HTTP Archive) file into stubs matching their method, path and
+ * queries. The file is read with a streaming parser so only one entry is in memory at a time,
+ * apart from the bodies kept for the stubs. Identical bodies are kept once and shared by every
+ * stub serving them.
+ */
+final class HarImporter {
+
+    private static final Logger logger = Logger.getLogger(HarImporter.class.getName());
+
+    // describe the original connection or the encoded body, HAR bodies are already decoded
+    private static final String[] SKIPPED_RESPONSE_HEADERS = {
+            "content-length", "content-encoding", "transfer-encoding", "connection"
+    };
+
+    // keyed by digest so that the bytes are only held by the shared buffer
+    private final Map<ByteString, Buffer> bodies = new HashMap<>();
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Integer> pathCounts = new HashMap<>();
+    private final Map<String, Integer> requestCounts = new HashMap<>();
+    private int skipped;
+
+    /**
+     * Reads every entry of the HAR and returns its stubs in the recorded order. Requests repeated
+     * with the same method, path and queries also match the order they arrived at their path.
+     */
+    static List<MatcherDispatcher.ResponseWithMatcher> read(Reader in) throws IOException {
+        return new HarImporter().readLog(in);
+    }
+
+    private List<MatcherDispatcher.ResponseWithMatcher> readLog(Reader in) throws IOException {
+
+        final JsonReader reader = new JsonReader(in);
+
+        try {
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+
+                if ("log".equals(reader.nextName())) {
+                    readEntries(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+
+        if (skipped > 0 && logger.isLoggable(Level.WARNING)) {
+            logger.warning("Skipped " + skipped + " HAR entries without a response or with an "
+                    + "unknown method.");
+        }
+
+        final List<MatcherDispatcher.ResponseWithMatcher> stubs = new ArrayList<>(entries.size());
+
+        for (Entry entry : entries) {
+
+            if (requestCounts.get(entry.key) > 1) {
+                entry.matcher.pathOrderIs(entry.pathOrder);
+            }
+
+            stubs.add(MatcherDispatcher.newStub(entry.response, entry.matcher));
+        }
+
+        return stubs;
+    }
+
+    private void readEntries(JsonReader reader) throws IOException {
+
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+
+            if (!"entries".equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginArray();
+
+            while (reader.hasNext()) {
+                readEntry(reader);
+            }
+
+            reader.endArray();
+        }
+
+        reader.endObject();
+    }
+
+    private void readEntry(JsonReader reader) throws IOException {
+
+        String method = null;
+        HttpUrl url = null;
+        MockResponse response = null;
+
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+
+            final String name = reader.nextName();
+
+            if ("request".equals(name)) {
+                reader.beginObject();
+
+                while (reader.hasNext()) {
+
+                    final String field = reader.nextName();
+
+                    if ("method".equals(field)) {
+                        method = reader.nextString();
+                    } else if ("url".equals(field)) {
+                        url = HttpUrl.parse(reader.nextString());
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+
+                reader.endObject();
+            } else if ("response".equals(name)) {
+                response = readResponse(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+
+        reader.endObject();
+
+        final HttpMethod httpMethod = parseMethod(method);
+
+        if (httpMethod == null || url == null || response == null) {
+            skipped++;
+            return;
+        }
+
+        final String path = url.encodedPath();
+        final String query = url.encodedQuery();
+        final RequestMatchersGroup matcher = new RequestMatchersGroup()
+                .methodIs(httpMethod)
+                .pathIs(path);
+
+        if (query != null && isMatchable(query)) {
+            for (Map.Entry<String, String> entry : RequestUtils.buildQueryMap('?' + query).entrySet()) {
+                matcher.queriesContain(entry.getKey(), entry.getValue());
+            }
+        }
+
+        final String key = method + ' ' + path + '?' + query;
+        entries.add(new Entry(matcher, response, key, increment(pathCounts, path)));
+        increment(requestCounts, key);
+    }
+
+    private MockResponse readResponse(JsonReader reader) throws IOException {
+
+        int status = 0;
+        String statusText = null;
+        final Headers.Builder headers = new Headers.Builder();
+        ByteString body = ByteString.EMPTY;
+
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+
+            final String name = reader.nextName();
+
+            if ("status".equals(name)) {
+                status = reader.nextInt();
+            } else if ("statusText".equals(name)) {
+                statusText = reader.nextScalar();
+            } else if ("headers".equals(name)) {
+                readHeaders(reader, headers);
+            } else if ("content".equals(name)) {
+                body = readContent(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+
+        reader.endObject();
+
+        // aborted requests are exported with status 0
+        if (status <= 0) {
+            return null;
+        }
+
+        final MockResponse response = new MockResponse()
+                .setHeaders(headers.build())
+                .setBody(share(body));
+
+        if (statusText != null && !statusText.isEmpty()) {
+            response.setStatus("HTTP/1.1 " + status + ' ' + statusText);
+        } else {
+            response.setResponseCode(status);
+        }
+
+        return response;
+    }
+
+    private static void readHeaders(JsonReader reader, Headers.Builder headers) throws IOException {
+
+        reader.beginArray();
+
+        while (reader.hasNext()) {
+
+            String name = null;
+            String value = null;
+
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+
+                final String field = reader.nextName();
+
+                if ("name".equals(field)) {
+                    name = reader.nextString();
+                } else if ("value".equals(field)) {
+                    value = reader.nextScalar();
+                } else {
+                    reader.skipValue();
+                }
+            }
+
+            reader.endObject();
+
+            if (name != null && value != null && isServed(name)) {
+                try {
+                    headers.add(name, value);
+                } catch (IllegalArgumentException e) {
+                    // browsers export headers OkHttp refuses to send, like non ASCII values
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.log(Level.FINE, "Skipped HAR header " + name, e);
+                    }
+                }
+            }
+        }
+
+        reader.endArray();
+    }
+
+    private static ByteString readContent(JsonReader reader) throws IOException {
+
+        String text = null;
+        boolean base64 = false;
+
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+
+            final String field = reader.nextName();
+
+            if ("text".equals(field)) {
+                text = reader.nextScalar();
+            } else if ("encoding".equals(field)) {
+                base64 = "base64".equalsIgnoreCase(reader.nextScalar());
+            } else {
+                reader.skipValue();
+            }
+        }
+
+        reader.endObject();
+
+        if (text == null) {
+            return ByteString.EMPTY;
+        }
+
+        final ByteString decoded = base64 ? ByteString.decodeBase64(text) : null;
+        return decoded != null ? decoded : ByteString.encodeUtf8(text);
+    }
+
+    // every response with these bytes gets the same buffer. The copies MockResponse makes of it
+    // share its segments instead of copying the bytes.
+    private Buffer share(ByteString body) {
+
+        final ByteString digest = body.sha256();
+        Buffer shared = bodies.get(digest);
+
+        if (shared == null) {
+            shared = new Buffer().write(body);
+            bodies.put(digest, shared);
+        }
+
+        return shared;
+    }
+
+    private static boolean isServed(String header) {
+
+        if (header.startsWith(":")) {
+            return false; // HTTP/2 pseudo headers
+        }
+
+        final String lowerCase = header.toLowerCase(Locale.US);
+
+        for (String excluded : SKIPPED_RESPONSE_HEADERS) {
+            if (excluded.equals(lowerCase)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // parameters without a value can't be matched by queriesContain
+    private static boolean isMatchable(String query) {
+
+        for (String part : query.split("&")) {
+            if (part.indexOf('=') <= 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static HttpMethod parseMethod(String method) {
+
+        if (method == null) {
+            return null;
+        }
+
+        try {
+            return HttpMethod.valueOf(method.toUpperCase(Locale.US));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int increment(Map<String, Integer> counts, String key) {
+        final Integer count = counts.get(key);
+        final int incremented = count == null ? 1 : count + 1;
+        counts.put(key, incremented);
+        return incremented;
+    }
+
+    private static final class Entry {
+
+        final RequestMatchersGroup matcher;
+        final MockResponse response;
+        final String key;
+        final int pathOrder;
+
+        Entry(RequestMatchersGroup matcher, MockResponse response, String key, int pathOrder) {
+            this.matcher = matcher;
+            this.response = response;
+            this.key = key;
+            this.pathOrder = pathOrder;
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package br.com.concretesolutions.requestmatcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * A streaming JSON pull parser. Used to read recordings, HAR files and manifests without the
+ * optional JSON path dependency and without holding the whole document in memory.
+ */
+final class JsonReader implements Closeable {
+
+    enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL,
+        END_DOCUMENT
+    }
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int pos;
+    private int limit;
+
+    private int[] stack = new int[32];
+    private int stackSize = 1;
+    private Token peeked;
+
+    JsonReader(Reader in) {
+        this.in = in;
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    Token peek() throws IOException {
+
+        if (peeked != null) {
+            return peeked;
+        }
+
+        final int scope = stack[stackSize - 1];
+
+        switch (scope) {
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                if (nextNonWhitespace() == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                pos--;
+                return peeked = peekValue();
+            case NONEMPTY_ARRAY:
+                final int arrayNext = nextNonWhitespace();
+                if (arrayNext == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                if (arrayNext != ',') {
+                    throw syntaxError("Expected ',' or ']'");
+                }
+                return peeked = peekValue();
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                int objectNext = nextNonWhitespace();
+                if (objectNext == '}') {
+                    return peeked = Token.END_OBJECT;
+                }
+                if (scope == NONEMPTY_OBJECT) {
+                    if (objectNext != ',') {
+                        throw syntaxError("Expected ',' or '}'");
+                    }
+                    objectNext = nextNonWhitespace();
+                }
+                if (objectNext != '"') {
+                    throw syntaxError("Expected a name");
+                }
+                stack[stackSize - 1] = DANGLING_NAME;
+                return peeked = Token.NAME;
+            case DANGLING_NAME:
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                return peeked = peekValue();
+            case EMPTY_DOCUMENT:
+                stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+                return peeked = peekValue();
+            default:
+                if (nextNonWhitespace() != -1) {
+                    throw syntaxError("Expected the end of the document");
+                }
+                return peeked = Token.END_DOCUMENT;
+        }
+    }
+
+    private Token peekValue() throws IOException {
+
+        final int c = nextNonWhitespace();
+
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+            case 'f':
+                pos--;
+                return Token.BOOLEAN;
+            case 'n':
+                pos--;
+                return Token.NULL;
+            case -1:
+                throw syntaxError("Unexpected end of the document");
+            default:
+                if (c != '-' && (c < '0' || c > '9')) {
+                    throw syntaxError("Unexpected character '" + (char) c + "'");
+                }
+                pos--;
+                return Token.NUMBER;
+        }
+    }
+
+    void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        stackSize--;
+    }
+
+    void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        stackSize--;
+    }
+
+    /**
+     * Whether the current object or array has more elements.
+     */
+    boolean hasNext() throws IOException {
+        final Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    String nextName() throws IOException {
+        expect(Token.NAME);
+        return readString();
+    }
+
+    /**
+     * Reads a string. Numbers are returned as they were written.
+     */
+    String nextString() throws IOException {
+
+        final Token token = peek();
+
+        if (token == Token.NUMBER) {
+            peeked = null;
+            return readLiteral();
+        }
+
+        expect(Token.STRING);
+        return readString();
+    }
+
+    long nextLong() throws IOException {
+
+        final String value = nextString();
+
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return (long) Double.parseDouble(value);
+        }
+    }
+
+    int nextInt() throws IOException {
+        return (int) nextLong();
+    }
+
+    boolean nextBoolean() throws IOException {
+
+        expect(Token.BOOLEAN);
+        final String literal = readLiteral();
+
+        if ("true".equals(literal)) {
+            return true;
+        } else if ("false".equals(literal)) {
+            return false;
+        }
+
+        throw syntaxError("Expected a boolean but was " + literal);
+    }
+
+    void nextNull() throws IOException {
+
+        expect(Token.NULL);
+
+        if (!"null".equals(readLiteral())) {
+            throw syntaxError("Expected null");
+        }
+    }
+
+    /**
+     * Reads a string, number, boolean or null as a string. Null is returned as null.
+     */
+    String nextScalar() throws IOException {
+
+        switch (peek()) {
+            case NULL:
+                nextNull();
+                return null;
+            case BOOLEAN:
+                return String.valueOf(nextBoolean());
+            default:
+                return nextString();
+        }
+    }
+
+    void skipValue() throws IOException {
+
+        int depth = 0;
+
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+                case NAME:
+                    nextName();
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of the document");
+                default:
+                    nextScalar();
+                    break;
+            }
+        } while (depth > 0);
+    }
+
+    private void expect(Token expected) throws IOException {
+
+        final Token token = peek();
+
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+
+        peeked = null;
+    }
+
+    private void push(int scope) {
+
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+
+        stack[stackSize++] = scope;
+    }
+
+    private int read() throws IOException {
+
+        if (pos == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            pos = 0;
+
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+
+        return buffer[pos++];
+    }
+
+    private int nextNonWhitespace() throws IOException {
+
+        int c;
+
+        do {
+            c = read();
+        } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+
+        return c;
+    }
+
+    /**
+     * Reads a string whose opening quote was already consumed.
+     */
+    private String readString() throws IOException {
+
+        final StringBuilder sb = new StringBuilder();
+
+        while (true) {
+
+            final int c = read();
+
+            if (c == '"') {
+                return sb.toString();
+            } else if (c == '\\') {
+                sb.append(readEscape());
+            } else if (c == -1) {
+                throw syntaxError("Unterminated string");
+            } else {
+                sb.append((char) c);
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+
+        final int c = read();
+
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    final int digit = Character.digit(read(), 16);
+                    if (digit == -1) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    value = value * 16 + digit;
+                }
+                return (char) value;
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            default:
+                throw syntaxError("Invalid escape");
+        }
+    }
+
+    private String readLiteral() throws IOException {
+
+        final StringBuilder sb = new StringBuilder();
+
+        while (true) {
+
+            final int c = read();
+
+            if (c == -1) {
+                return sb.toString();
+            }
+
+            if (c == ',' || c == '}' || c == ']' || c == ':'
+                    || c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                pos--;
+                return sb.toString();
+            }
+
+            sb.append((char) c);
+        }
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " near offset " + pos + " of the current block");
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,202 @@
+package br.com.concretesolutions.requestmatcher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * A streaming JSON writer that indents with two spaces. Counterpart of {@link JsonReader}.
+ */
+final class JsonWriter implements Closeable {
+
+    private static final int EMPTY_ARRAY = 0;
+    private static final int NONEMPTY_ARRAY = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int NONEMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int DOCUMENT = 5;
+
+    // valid JSON but not valid inside javascript strings
+    private static final char LINE_SEPARATOR = 0x2028;
+    private static final char PARAGRAPH_SEPARATOR = 0x2029;
+
+    private final Writer out;
+    private int[] stack = new int[32];
+    private int stackSize = 1;
+
+    JsonWriter(Writer out) {
+        this.out = out;
+        stack[0] = DOCUMENT;
+    }
+
+    JsonWriter beginObject() throws IOException {
+        beforeValue();
+        out.write('{');
+        push(EMPTY_OBJECT);
+        return this;
+    }
+
+    JsonWriter endObject() throws IOException {
+        return close(EMPTY_OBJECT, NONEMPTY_OBJECT, '}');
+    }
+
+    JsonWriter beginArray() throws IOException {
+        beforeValue();
+        out.write('[');
+        push(EMPTY_ARRAY);
+        return this;
+    }
+
+    JsonWriter endArray() throws IOException {
+        return close(EMPTY_ARRAY, NONEMPTY_ARRAY, ']');
+    }
+
+    JsonWriter name(String name) throws IOException {
+
+        final int scope = stack[stackSize - 1];
+
+        if (scope != EMPTY_OBJECT && scope != NONEMPTY_OBJECT) {
+            throw new IllegalStateException("Names are only allowed inside objects");
+        }
+
+        if (scope == NONEMPTY_OBJECT) {
+            out.write(',');
+        }
+
+        newline();
+        string(name);
+        out.write(": ");
+        stack[stackSize - 1] = DANGLING_NAME;
+        return this;
+    }
+
+    JsonWriter value(String value) throws IOException {
+
+        if (value == null) {
+            return nullValue();
+        }
+
+        beforeValue();
+        string(value);
+        return this;
+    }
+
+    JsonWriter value(long value) throws IOException {
+        beforeValue();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    JsonWriter nullValue() throws IOException {
+        beforeValue();
+        out.write("null");
+        return this;
+    }
+
+    private void beforeValue() throws IOException {
+
+        switch (stack[stackSize - 1]) {
+            case NONEMPTY_ARRAY:
+                out.write(',');
+                newline();
+                break;
+            case EMPTY_ARRAY:
+                stack[stackSize - 1] = NONEMPTY_ARRAY;
+                newline();
+                break;
+            case DANGLING_NAME:
+                stack[stackSize - 1] = NONEMPTY_OBJECT;
+                break;
+            case DOCUMENT:
+                break;
+            default:
+                throw new IllegalStateException("Values inside objects need a name");
+        }
+    }
+
+    private JsonWriter close(int empty, int nonempty, char bracket) throws IOException {
+
+        final int scope = stack[stackSize - 1];
+
+        if (scope != empty && scope != nonempty) {
+            throw new IllegalStateException("Nesting problem closing with " + bracket);
+        }
+
+        stackSize--;
+
+        if (scope == nonempty) {
+            newline();
+        }
+
+        out.write(bracket);
+        return this;
+    }
+
+    private void push(int scope) {
+
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+
+        stack[stackSize++] = scope;
+    }
+
+    private void newline() throws IOException {
+
+        out.write('\n');
+
+        for (int i = 1; i < stackSize; i++) {
+            out.write("  ");
+        }
+    }
+
+    private void string(String value) throws IOException {
+
+        out.write('"');
+
+        for (int i = 0; i < value.length(); i++) {
+
+            final char c = value.charAt(i);
+
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == LINE_SEPARATOR || c == PARAGRAPH_SEPARATOR) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+                    break;
+            }
+        }
+
+        out.write('"');
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.write('\n');
+        out.close();
+    }
+}
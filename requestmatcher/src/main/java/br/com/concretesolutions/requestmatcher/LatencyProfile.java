@@ -0,0 +1,278 @@
+package br.com.concretesolutions.requestmatcher;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+
+/**
+ * Simulated network conditions for the responses of a fixture: a fixed delay before the headers,
+ * a random delay before the body and a bandwidth cap. Body delays are drawn from a
+ * {@link Random} that can be seeded so a test run can be reproduced.
+ * <p>
+ * Attach it to a fixture with {@link RequestMatcherRule.IfRequestMatches#withLatency(LatencyProfile)}
+ * or to every fixture of a rule with {@link RequestMatcherRule#withDefaultLatency(LatencyProfile)}:
+ * <pre>
+ * LatencyProfile mobile = LatencyProfile.builder()
+ *     .headersDelay(50, TimeUnit.MILLISECONDS)
+ *     .normalBodyDelay(200, 50, TimeUnit.MILLISECONDS)
+ *     .bytesPerSecond(64 * 1024)
+ *     .seed(42)
+ *     .build();
+ * </pre>
+ */
+public final class LatencyProfile {
+
+    // bandwidth is throttled in small periods so that bodies don't arrive in one second bursts
+    private static final long THROTTLE_PERIODS_PER_SECOND = 10;
+
+    private final long headersDelayNanos;
+    private final Distribution bodyDelay;
+    private final long bytesPerSecond;
+    private final Random random;
+
+    private LatencyProfile(Builder builder) {
+        this.headersDelayNanos = builder.headersDelayNanos;
+        this.bodyDelay = builder.bodyDelay;
+        this.bytesPerSecond = builder.bytesPerSecond;
+        this.random = builder.seeded ? new Random(builder.seed) : new Random();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns a copy of the response with this profile's delays and throttling. A new body delay
+     * is drawn on every call. The given response is not changed so it can be served again.
+     */
+    public MockResponse apply(MockResponse response) {
+
+        final MockResponse delayed = response.clone();
+
+        if (headersDelayNanos > 0) {
+            delayed.setHeadersDelay(headersDelayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        if (bodyDelay != null) {
+            delayed.setBodyDelay(nextBodyDelayNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        if (bytesPerSecond > 0) {
+            delayed.throttleBody(Math.max(1, bytesPerSecond / THROTTLE_PERIODS_PER_SECOND),
+                    TimeUnit.SECONDS.toMillis(1) / THROTTLE_PERIODS_PER_SECOND, TimeUnit.MILLISECONDS);
+        }
+
+        return delayed;
+    }
+
+    /**
+     * Draws the next body delay. Never negative.
+     */
+    long nextBodyDelayNanos() {
+        return bodyDelay != null ? Math.max(0, bodyDelay.sample(random)) : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyProfile{headersDelayNanos=" + headersDelayNanos
+                + ", bodyDelay=" + bodyDelay
+                + ", bytesPerSecond=" + bytesPerSecond + '}';
+    }
+
+    public static final class Builder {
+
+        private long headersDelayNanos;
+        private Distribution bodyDelay;
+        private long bytesPerSecond;
+        private long seed;
+        private boolean seeded;
+
+        private double[] percentiles = new double[0];
+        private long[] percentileDelays = new long[0];
+
+        private Builder() {
+        }
+
+        /**
+         * Fixed delay before the status line and headers are sent.
+         */
+        public Builder headersDelay(long delay, TimeUnit unit) {
+            headersDelayNanos = unit.toNanos(delay);
+            return this;
+        }
+
+        /**
+         * Body delay drawn uniformly between min and max.
+         */
+        public Builder uniformBodyDelay(long min, long max, TimeUnit unit) {
+
+            if (min > max) {
+                throw new IllegalArgumentException("min must not be greater than max");
+            }
+
+            bodyDelay = new Uniform(unit.toNanos(min), unit.toNanos(max));
+            return this;
+        }
+
+        /**
+         * Body delay drawn from a normal distribution. Negative draws are served without delay.
+         */
+        public Builder normalBodyDelay(long mean, long standardDeviation, TimeUnit unit) {
+            bodyDelay = new Normal(unit.toNanos(mean), unit.toNanos(standardDeviation));
+            return this;
+        }
+
+        /**
+         * Adds a point of a recorded body delay distribution, like the p50 or p99 of production
+         * latencies. Delays between points are interpolated linearly.
+         *
+         * @param percentile A value between 0 and 100
+         */
+        public Builder bodyDelayPercentile(double percentile, long delay, TimeUnit unit) {
+
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile must be between 0 and 100");
+            }
+
+            final int size = percentiles.length;
+            percentiles = Arrays.copyOf(percentiles, size + 1);
+            percentileDelays = Arrays.copyOf(percentileDelays, size + 1);
+            percentiles[size] = percentile;
+            percentileDelays[size] = unit.toNanos(delay);
+            bodyDelay = null;
+            return this;
+        }
+
+        /**
+         * Caps the speed the body is sent at.
+         */
+        public Builder bytesPerSecond(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+            return this;
+        }
+
+        /**
+         * Seeds the random delays so the same sequence of delays is drawn on every run.
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            this.seeded = true;
+            return this;
+        }
+
+        public LatencyProfile build() {
+
+            if (percentiles.length > 0 && bodyDelay == null) {
+                bodyDelay = new Percentiles(percentiles, percentileDelays);
+            }
+
+            return new LatencyProfile(this);
+        }
+    }
+
+    private abstract static class Distribution {
+        abstract long sample(Random random);
+    }
+
+    private static final class Uniform extends Distribution {
+
+        private final long min;
+        private final long max;
+
+        Uniform(long min, long max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        long sample(Random random) {
+            return min + (long) (random.nextDouble() * (max - min));
+        }
+
+        @Override
+        public String toString() {
+            return "uniform(" + min + ", " + max + ")";
+        }
+    }
+
+    private static final class Normal extends Distribution {
+
+        private final long mean;
+        private final long standardDeviation;
+
+        Normal(long mean, long standardDeviation) {
+            this.mean = mean;
+            this.standardDeviation = standardDeviation;
+        }
+
+        @Override
+        long sample(Random random) {
+            return mean + (long) (random.nextGaussian() * standardDeviation);
+        }
+
+        @Override
+        public String toString() {
+            return "normal(" + mean + ", " + standardDeviation + ")";
+        }
+    }
+
+    private static final class Percentiles extends Distribution {
+
+        private final double[] percentiles;
+        private final long[] delays;
+
+        Percentiles(final double[] percentiles, long[] delays) {
+
+            // sort the points by percentile keeping their delays
+            final Integer[] indexes = new Integer[percentiles.length];
+
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = i;
+            }
+
+            Arrays.sort(indexes, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer first, Integer second) {
+                    return Double.compare(percentiles[first], percentiles[second]);
+                }
+            });
+
+            this.percentiles = new double[percentiles.length];
+            this.delays = new long[delays.length];
+
+            for (int i = 0; i < indexes.length; i++) {
+                this.percentiles[i] = percentiles[indexes[i]];
+                this.delays[i] = delays[indexes[i]];
+            }
+        }
+
+        @Override
+        long sample(Random random) {
+
+            final double percentile = random.nextDouble() * 100;
+
+            if (percentile <= percentiles[0]) {
+                return delays[0];
+            }
+
+            for (int i = 1; i < percentiles.length; i++) {
+
+                if (percentile <= percentiles[i]) {
+                    final double fraction =
+                            (percentile - percentiles[i - 1]) / (percentiles[i] - percentiles[i - 1]);
+                    return delays[i - 1] + (long) (fraction * (delays[i] - delays[i - 1]));
+                }
+            }
+
+            return delays[delays.length - 1];
+        }
+
+        @Override
+        public String toString() {
+            return "percentiles(" + Arrays.toString(percentiles) + ", " + Arrays.toString(delays) + ")";
+        }
+    }
+}
@@ -48,6 +48,27 @@ public class LocalTestRequestMatcherRule extends RequestMatcherRule {
         super(server, fixturesRootFolder);
     }
 
+    /**
+     * Creates a rule that borrows a started server from the given pool for each test instead of
+     * starting its own. This will by default look for fixtures in the "fixtures" folder.
+     *
+     * @param pool The {@link MockWebServerPool} to borrow servers from
+     */
+    public LocalTestRequestMatcherRule(MockWebServerPool pool) {
+        super(pool, "fixtures");
+    }
+
+    /**
+     * Creates a rule that borrows a started server from the given pool for each test instead of
+     * starting its own.
+     *
+     * @param pool               The {@link MockWebServerPool} to borrow servers from
+     * @param fixturesRootFolder The root folder to look for fixtures. Defaults to "fixtures"
+     */
+    public LocalTestRequestMatcherRule(MockWebServerPool pool, String fixturesRootFolder) {
+        super(pool, fixturesRootFolder);
+    }
+
     @Override
     protected InputStream open(String path) throws IOException {
         return LocalTestRequestMatcherRule.class.getClassLoader().getResourceAsStream(path);
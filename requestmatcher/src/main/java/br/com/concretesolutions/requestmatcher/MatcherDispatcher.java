@@ -1,14 +1,25 @@
 package br.com.concretesolutions.requestmatcher;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import br.com.concretesolutions.requestmatcher.exception.NoMatchersForRequestException;
 import br.com.concretesolutions.requestmatcher.exception.RequestAssertionException;
+import br.com.concretesolutions.requestmatcher.model.GraphQlOperation;
 import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.RecordedRequest;
@@ -19,50 +30,606 @@ public final class MatcherDispatcher extends Dispatcher {
     private static final Logger logger = Logger.getLogger(MatcherDispatcher.class.getName());
     private static final String ASSERT_HEADER = "REQUEST-ASSERT";
     private static final String DEFAULT_MESSAGE = "Unexpected exception during assertion.";
+    private static final String RECORDING_MESSAGE = "Could not record request.";
+    private static final String GENERATOR_MESSAGE = "Could not generate response.";
+    private static final String ROUTING_KEY_MESSAGE = "Could not extract the routing key.";
+    private static final String UNROUTABLE_MESSAGE = "Fixture can't be routed.";
+
+    /**
+     * The state every scenario starts in.
+     */
+    public static final String SCENARIO_STARTED = "Started";
 
     private final AtomicInteger order = new AtomicInteger();
+    private final ConcurrentMap<String, AtomicInteger> pathOrders = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> routingKeyOrders = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> flowOrders = new ConcurrentHashMap<>();
     private final Set<ResponseWithMatcher> responseSet = Collections.newSetFromMap(
             new ConcurrentHashMap<ResponseWithMatcher, Boolean>()
     );
 
+    // stubs are indexed on the first dispatch after they are added so that the DSL chain that
+    // tags them has already finished
+    private final Queue<ResponseWithMatcher> pending = new ConcurrentLinkedQueue<>();
+    private final Set<ResponseWithMatcher> unindexed = StubIndex.newBucket();
+    private final StubIndex routingIndex = new StubIndex();
+    private final StubIndex graphQlIndex = new StubIndex();
+    private final StubIndex pathIndex = new StubIndex();
+    private final ConcurrentMap<String, Scenario> scenarios = new ConcurrentHashMap<>();
+
+    private final AtomicLong unmatched = new AtomicLong();
+    private final AtomicLongArray injectedFaults =
+            new AtomicLongArray(FaultProfile.Fault.values().length);
+    private final DispatchStats stats = new DispatchStats();
+    private final ConnectionStats connectionStats = new ConnectionStats();
+
+    private volatile RoutingKeyExtractor routingKeyExtractor;
+    private volatile LatencyProfile defaultLatency;
+    private volatile FaultProfile defaultFaults;
+    private volatile RequestJournal journal;
+    private volatile RequestTimings timings;
+    private volatile DuplicateDetector duplicateDetector;
+    private volatile Recorder recorder;
+    private volatile boolean loadTarget;
+    private volatile boolean recordingStats;
+    private volatile int diagnosticsSampleRate = 1;
     private RequestAssertionException assertionError;
+    // a misconfigured fixture explains the misses that follow, so it is reported first
+    private volatile RequestAssertionException configurationError;
 
     @Override
     public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+        return dispatch(request, 0);
+    }
+
+    /**
+     * Dispatches a request whose path starts with a prefix that is not part of the matched path.
+     */
+    MockResponse dispatch(RecordedRequest request, int pathPrefixLength) {
 
+        final boolean recording = recordingStats;
+        final long start = recording ? System.nanoTime() : 0;
         final int currentOrder = order.incrementAndGet();
 
-        int matcherOrder = 0;
-        final NoMatchersForRequestException.Builder builder =
-                new NoMatchersForRequestException.Builder(request);
+        connectionStats.record(request.getSequenceNumber());
+
+        final ParsedRequest parsedRequest = loadTarget
+                ? ParsedRequest.beginReusing(request, pathPrefixLength)
+                : ParsedRequest.begin(request, pathPrefixLength);
+
+        try {
+            return dispatch(parsedRequest, currentOrder);
+        } finally {
+            if (recording) {
+                stats.record(parsedRequest.candidatesTried, parsedRequest.matchingNanos,
+                        System.nanoTime() - start);
+            }
+            ParsedRequest.end();
+        }
+    }
+
+    private MockResponse dispatch(ParsedRequest parsedRequest, int currentOrder) {
+
+        final RequestTimings currentTimings = timings;
+        final DuplicateDetector detector = duplicateDetector;
+        final long arrival = currentTimings != null || detector != null ? System.nanoTime() : 0;
+
+        if (currentTimings != null) {
+            currentTimings.arrived(parsedRequest.getPath(), arrival);
+        }
+
+        if (detector != null) {
+            detector.record(parsedRequest, arrival);
+        }
+
+        indexPendingStubs();
+
+        final RecordedRequest request = parsedRequest.getRequest();
+        final RoutingKeyExtractor extractor = routingKeyExtractor;
+
+        if (extractor != null) {
+            try {
+                parsedRequest.setRoutingKey(extractor.extract(parsedRequest));
+            } catch (RuntimeException e) {
+                this.assertionError = new RequestAssertionException(ROUTING_KEY_MESSAGE, e);
+                logger.log(Level.SEVERE, ROUTING_KEY_MESSAGE, e);
+
+                // the request still arrived, verify and requestsTo must see it
+                final RequestJournal currentJournal = journal;
+
+                if (currentJournal != null) {
+                    currentJournal.record(parsedRequest, null);
+                }
+
+                return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_END);
+            }
+        }
+
+        final String routingKey = parsedRequest.getRoutingKey();
+        parsedRequest.setOrders(this,
+                counter(pathOrders, parsedRequest.getPath()).incrementAndGet(),
+                routingKey != null ? counter(routingKeyOrders, routingKey).incrementAndGet() : 0);
+
+        final long matchingStart = recordingStats ? System.nanoTime() : 0;
+
+        ResponseWithMatcher match = scenarios.isEmpty()
+                ? null
+                : tryScenarios(parsedRequest, currentOrder);
+
+        final Set<ResponseWithMatcher> routed = routingIndex.get(parsedRequest.getRoutingKey());
+
+        if (match == null) {
+            match = tryCandidates(routed, parsedRequest, currentOrder);
+        }
+
+        Set<ResponseWithMatcher> operations = Collections.emptySet();
+
+        if (match == null && !graphQlIndex.isEmpty()) {
+            final GraphQlOperation operation = parsedRequest.getGraphQlOperation();
+
+            if (operation != null) {
+                operations = graphQlIndex.get(operation.getName());
+                match = tryCandidates(operations, parsedRequest, currentOrder);
+            }
+        }
+
+        if (match == null && !pathIndex.isEmpty()) {
+            match = tryCandidates(pathIndex.get(parsedRequest.getPath()), parsedRequest, currentOrder);
+        }
+
+        if (match == null) {
+            match = tryCandidates(unindexed, parsedRequest, currentOrder);
+        }
+
+        if (recordingStats) {
+            parsedRequest.matchingNanos = System.nanoTime() - matchingStart;
+
+            if (match == null && parsedRequest.lostClaims != null) {
+                for (ResponseWithMatcher lost : parsedRequest.lostClaims) {
+                    lost.misses.incrementAndGet();
+                }
+            }
+        }
+
+        final RequestJournal currentJournal = journal;
+
+        if (currentJournal != null) {
+            currentJournal.record(parsedRequest, match != null ? match.getMatcher() : null);
+        }
+
+        if (match != null) {
+
+            if (currentTimings != null && parsedRequest.fault == null) {
+                currentTimings.served(System.nanoTime());
+            }
+
+            return serve(match, parsedRequest);
+        }
+
+        final Recorder currentRecorder = recorder;
+
+        if (currentRecorder != null) {
+            return record(currentRecorder, parsedRequest);
+        }
+
+        final long misses = unmatched.incrementAndGet();
+
+        // building the diagnostics runs every candidate again and copies the body. Under load
+        // only some of the misses are described.
+        if (!loadTarget || (misses - 1) % diagnosticsSampleRate == 0) {
+
+            final NoMatchersForRequestException.Builder builder =
+                    new NoMatchersForRequestException.Builder(request);
+            int matcherOrder = 0;
+
+            // only the stubs of the current states. The others could match but aren't eligible.
+            for (Scenario scenario : scenarios.values()) {
+                matcherOrder = describe(builder, scenario.candidates(), request, currentOrder,
+                        matcherOrder);
+            }
+
+            matcherOrder = describe(builder, routed, request, currentOrder, matcherOrder);
+            matcherOrder = describe(builder, operations, request, currentOrder, matcherOrder);
+
+            // stubs of every path are described so that a mistyped path shows up
+            for (Set<ResponseWithMatcher> paths : pathIndex.buckets()) {
+                matcherOrder = describe(builder, paths, request, currentOrder, matcherOrder);
+            }
+
+            describe(builder, unindexed, request, currentOrder, matcherOrder);
+
+            // noinspection ThrowableInstanceNeverThrown
+            this.assertionError = new RequestAssertionException(DEFAULT_MESSAGE, builder.build());
+        }
+
+        return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_END);
+    }
+
+    private MockResponse record(Recorder currentRecorder, ParsedRequest parsedRequest) {
+        try {
+            return currentRecorder.proxy(parsedRequest);
+        } catch (IOException | RuntimeException e) {
+            this.assertionError = new RequestAssertionException(RECORDING_MESSAGE, e);
+            logger.log(Level.SEVERE, RECORDING_MESSAGE, e);
+            return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_END);
+        }
+    }
+
+    // the stubs of each scenario are indexed by state so only the eligible ones are evaluated
+    private ResponseWithMatcher tryScenarios(ParsedRequest parsedRequest, int currentOrder) {
+
+        for (Scenario scenario : scenarios.values()) {
+
+            String state;
+
+            // a request that lost the race for a transition is tried again in the new state
+            do {
+                state = scenario.state.get();
+
+                final ResponseWithMatcher match =
+                        tryCandidates(scenario.byState.get(state), parsedRequest, currentOrder);
+
+                if (match != null) {
+                    return match;
+                }
+            } while (!state.equals(scenario.state.get()));
+        }
+
+        return null;
+    }
+
+    private ResponseWithMatcher tryCandidates(Set<ResponseWithMatcher> candidates,
+                                              ParsedRequest parsedRequest,
+                                              int currentOrder) {
 
-        for (ResponseWithMatcher response : responseSet) {
+        final RecordedRequest request = parsedRequest.getRequest();
+
+        for (ResponseWithMatcher response : candidates) {
 
             final RequestMatchersGroup matcher = response.getMatcher();
 
             if (matcher != null) {
+                parsedRequest.candidatesTried++;
+
+                if (response.isIndexStale()) {
+                    // still tried now: its current bucket is wider than the right one
+                    reindex(response);
+                }
+
                 try {
-                    matcher.doAssert(request, currentOrder);
-                    responseSet.remove(response);
-                    return response.getResponse(); // return proper response
-                } catch (AssertionError assertionError) {
-                    builder.appendAssertionError(++matcherOrder, assertionError, matcher);
-                    // continue
+                    if (matcher.matches(request, currentOrder)) {
+
+                        if (injectFault(response, parsedRequest)) {
+                            return response; // the fault is served and the stub is not consumed
+                        }
+
+                        if (claim(response)) {
+                            if (recordingStats) {
+                                response.hits.incrementAndGet();
+                            }
+                            return response; // return proper response
+                        }
+
+                        if (recordingStats) {
+                            parsedRequest.lostClaim(response);
+                        }
+
+                        continue;
+                    }
+
+                    if (recordingStats) {
+                        response.misses.incrementAndGet();
+                    }
                 } catch (Exception e) {
                     this.assertionError = new RequestAssertionException(DEFAULT_MESSAGE, e);
                     logger.log(Level.SEVERE, "Error while doing assert", e);
-                    return response.getResponse(); // return response but keep exception
+                    return response; // return response but keep exception
                 }
             }
         }
 
-        // noinspection ThrowableInstanceNeverThrown
-        this.assertionError = new RequestAssertionException(DEFAULT_MESSAGE, builder.build());
-        return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_END);
+        return null;
+    }
+
+    private static int describe(NoMatchersForRequestException.Builder builder,
+                                Set<ResponseWithMatcher> candidates,
+                                RecordedRequest request,
+                                int currentOrder,
+                                int matcherOrder) {
+
+        int order = matcherOrder;
+
+        for (ResponseWithMatcher response : candidates) {
+
+            final RequestMatchersGroup matcher = response.getMatcher();
+
+            if (matcher != null) {
+                try {
+                    matcher.doAssert(request, currentOrder);
+                } catch (AssertionError assertionError) {
+                    builder.appendAssertionError(++order, assertionError, matcher);
+                }
+            }
+        }
+
+        return order;
+    }
+
+    private boolean injectFault(ResponseWithMatcher stub, ParsedRequest parsedRequest) {
+
+        final FaultProfile faults = stub.faults != null ? stub.faults : defaultFaults;
+        final FaultProfile.Fault fault = faults != null ? faults.next() : null;
+
+        if (fault == null) {
+            return false;
+        }
+
+        injectedFaults.incrementAndGet(fault.ordinal());
+        parsedRequest.faults = faults;
+        parsedRequest.fault = fault;
+        return true;
+    }
+
+    private MockResponse serve(ResponseWithMatcher stub, ParsedRequest parsedRequest) {
+
+        final FaultProfile.Fault fault = parsedRequest.fault;
+
+        // only a truncated body needs the response the stub would serve
+        if (fault != null && fault != FaultProfile.Fault.TRUNCATED_BODY) {
+            return parsedRequest.faults.inject(fault, stub.getResponse());
+        }
+
+        MockResponse response = stub.getResponse();
+
+        if (stub.generator != null) {
+            try {
+                response = stub.generator.generate(parsedRequest);
+            } catch (IOException | RuntimeException e) {
+                this.assertionError = new RequestAssertionException(GENERATOR_MESSAGE, e);
+                logger.log(Level.SEVERE, GENERATOR_MESSAGE, e);
+                return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_END);
+            }
+        }
+
+        final LatencyProfile latency = stub.latency != null ? stub.latency : defaultLatency;
+
+        if (latency != null) {
+            response = latency.apply(response);
+        }
+
+        return fault != null ? parsedRequest.faults.inject(fault, response) : response;
+    }
+
+    private void indexPendingStubs() {
+
+        ResponseWithMatcher stub;
+
+        while ((stub = pending.poll()) != null) {
+            synchronized (stub) {
+                index(stub);
+            }
+        }
+    }
+
+    // the DSL may still tag a stub after a request indexed it. A stub only gets narrower, so
+    // the bucket it is in is tried for every request it could match and it is moved from there
+    private void reindex(ResponseWithMatcher stub) {
+        synchronized (stub) {
+            if (stub.isIndexStale() && responseSet.contains(stub)) {
+                stub.bucket.remove(stub);
+                index(stub);
+            }
+        }
+    }
+
+    private void index(ResponseWithMatcher stub) {
+
+        final RequestMatchersGroup matcher = stub.getMatcher();
+
+        // read first so that a key set while indexing marks the stub stale again
+        final int version = matcher != null ? matcher.getIndexVersion() : 0;
+        final String scenarioName = stub.scenarioName;
+        final String routingKey = matcher != null ? matcher.getRoutingKey() : null;
+        final String operationName = matcher != null ? matcher.getGraphQlOperationName() : null;
+        final String path = matcher != null ? matcher.getIndexablePath() : null;
+
+        if (routingKey != null && routingKeyExtractor == null) {
+            // without an extractor requests have no key and the group could never match
+            final IllegalStateException error = new IllegalStateException("The group "
+                    + matcher + " has routingKeyIs(\"" + routingKey + "\") but there is no "
+                    + "RoutingKeyExtractor. Call withRoutingKeyExtractor first.");
+            this.configurationError = new RequestAssertionException(UNROUTABLE_MESSAGE, error);
+            logger.log(Level.SEVERE, UNROUTABLE_MESSAGE, error);
+        }
+
+        if (scenarioName != null) {
+            final Scenario scenario = scenario(scenarioName);
+            scenario.byState.add(stub.requiredState, stub);
+            stub.scenario = scenario;
+            stub.bucket = scenario.byState.get(stub.requiredState);
+        } else if (routingKey != null && routingKeyExtractor != null) {
+            routingIndex.add(routingKey, stub);
+            stub.bucket = routingIndex.get(routingKey);
+        } else if (operationName != null) {
+            graphQlIndex.add(operationName, stub);
+            stub.bucket = graphQlIndex.get(operationName);
+        } else if (path != null) {
+            pathIndex.add(path, stub);
+            stub.bucket = pathIndex.get(path);
+        } else {
+            unindexed.add(stub);
+            stub.bucket = unindexed;
+        }
+
+        // written last: a thread that sees them also sees the bucket and the scenario
+        stub.indexedScenario = scenarioName;
+        stub.indexedVersion = version;
+    }
+
+    private Scenario scenario(String name) {
+
+        Scenario scenario = scenarios.get(name);
+
+        if (scenario == null) {
+            final Scenario newScenario = new Scenario();
+            scenario = scenarios.putIfAbsent(name, newScenario);
+
+            if (scenario == null) {
+                scenario = newScenario;
+            }
+        }
+
+        return scenario;
+    }
+
+    /**
+     * The current state of a scenario. Scenarios start in {@link #SCENARIO_STARTED}.
+     */
+    public String getScenarioState(String name) {
+        return scenario(name).state.get();
+    }
+
+    /**
+     * Moves a scenario to the given state, for instance to start a test half way through it.
+     */
+    public void setScenarioState(String name, String state) {
+        scenario(name).state.set(state);
+    }
+
+    /**
+     * The order the next request served by a group of the given flow will have.
+     */
+    int nextFlowOrder(String flow) {
+        return counter(flowOrders, flow).get() + 1;
+    }
+
+    private static AtomicInteger counter(ConcurrentMap<String, AtomicInteger> counters, String key) {
+
+        AtomicInteger counter = counters.get(key);
+
+        if (counter == null) {
+            final AtomicInteger newCounter = new AtomicInteger();
+            counter = counters.putIfAbsent(key, newCounter);
+
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+
+        return counter;
+    }
+
+    /**
+     * Sets the extractor for the routing key of requests. Requests are only matched against
+     * stubs tagged with their key through {@link RequestMatchersGroup#routingKeyIs(String)} and
+     * against stubs that are not tagged at all.
+     */
+    public void setRoutingKeyExtractor(RoutingKeyExtractor routingKeyExtractor) {
+        this.routingKeyExtractor = routingKeyExtractor;
+    }
+
+    /**
+     * Sets the latency of stubs that don't have their own.
+     */
+    public void setDefaultLatency(LatencyProfile defaultLatency) {
+        this.defaultLatency = defaultLatency;
+    }
+
+    /**
+     * Sets the faults injected into the requests matching stubs that don't have their own.
+     */
+    public void setDefaultFaults(FaultProfile defaultFaults) {
+        this.defaultFaults = defaultFaults;
+    }
+
+    /**
+     * Turns the load target mode on: every stub is reusable, the request views are recycled
+     * between requests of the same thread and only one in every diagnosticsSampleRate unmatched
+     * requests is described in {@link #getAssertionException()}.
+     */
+    public void setLoadTarget(int diagnosticsSampleRate) {
+
+        if (diagnosticsSampleRate < 1) {
+            throw new IllegalArgumentException("diagnosticsSampleRate must be at least 1");
+        }
+
+        this.diagnosticsSampleRate = diagnosticsSampleRate;
+        this.loadTarget = true;
+    }
+
+    /**
+     * Records every dispatched request in the given journal.
+     */
+    public void setJournal(RequestJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Records the arrival time of every dispatched request in the given timings.
+     */
+    public void setTimings(RequestTimings timings) {
+        this.timings = timings;
+    }
+
+    /**
+     * Fingerprints every dispatched request with the given detector to find duplicates.
+     */
+    public void setDuplicateDetector(DuplicateDetector duplicateDetector) {
+        this.duplicateDetector = duplicateDetector;
+    }
+
+    /**
+     * Proxies the requests that match no stub through the given recorder instead of failing.
+     */
+    void setRecorder(Recorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Starts recording {@link DispatchStats}. Requests dispatched before are not recorded.
+     */
+    public void setRecordingStats(boolean recordingStats) {
+        this.recordingStats = recordingStats;
+    }
+
+    public DispatchStats getStats() {
+        return stats;
+    }
+
+    public ConnectionStats getConnectionStats() {
+        return connectionStats;
+    }
+
+    /**
+     * Number of requests that matched no stub.
+     */
+    public long getUnmatchedCount() {
+        return unmatched.get();
+    }
+
+    /**
+     * Number of requests that got a fault of a {@link FaultProfile}.
+     */
+    public long getInjectedFaultCount() {
+
+        long count = 0;
+
+        for (int i = 0; i < injectedFaults.length(); i++) {
+            count += injectedFaults.get(i);
+        }
+
+        return count;
+    }
+
+    /**
+     * Number of requests that got the given fault of a {@link FaultProfile}.
+     */
+    public long getInjectedFaultCount(FaultProfile.Fault fault) {
+        return injectedFaults.get(fault.ordinal());
     }
 
     public RequestAssertionException getAssertionException() {
-        return assertionError;
+        return configurationError != null ? configurationError : assertionError;
     }
 
     public int size() {
@@ -73,20 +640,81 @@ public final class MatcherDispatcher extends Dispatcher {
         return responseSet;
     }
 
+    /**
+     * Stubs that were never served. Reusable stubs stay in {@link #getResponseSet()} after they
+     * are served so they are only returned here if no request matched them.
+     */
+    public List<ResponseWithMatcher> getUnusedStubs() {
+
+        final List<ResponseWithMatcher> unused = new ArrayList<>();
+
+        for (ResponseWithMatcher stub : responseSet) {
+            if (!stub.served) {
+                unused.add(stub);
+            }
+        }
+
+        return unused;
+    }
+
     public RequestMatchersGroup addFixture(MockResponse response) {
         return addFixture(response, new RequestMatchersGroup());
     }
 
     public <T extends RequestMatchersGroup> T addFixture(MockResponse response, T requestMatcher) {
-        final String assertPath = response.hashCode() + "::" + System.identityHashCode(requestMatcher);
-        responseSet.add(new ResponseWithMatcher(requestMatcher, response.setHeader(ASSERT_HEADER, assertPath)));
+        addStub(response, requestMatcher);
         return requestMatcher;
     }
 
+    ResponseWithMatcher addStub(MockResponse response, RequestMatchersGroup requestMatcher) {
+        final ResponseWithMatcher stub = newStub(response, requestMatcher);
+        responseSet.add(stub);
+        pending.add(stub);
+        stats.register(stub);
+        return stub;
+    }
+
+    /**
+     * Creates a stub that is only served after it is added with {@link #addStubs(Collection)}.
+     */
+    static ResponseWithMatcher newStub(MockResponse response, RequestMatchersGroup requestMatcher) {
+        final String assertPath = response.hashCode() + "::" + System.identityHashCode(requestMatcher);
+        return new ResponseWithMatcher(requestMatcher, response.setHeader(ASSERT_HEADER, assertPath));
+    }
+
+    /**
+     * Adds many stubs at once. They are indexed together on the next dispatch.
+     */
+    void addStubs(Collection<ResponseWithMatcher> stubs) {
+
+        responseSet.addAll(stubs);
+        pending.addAll(stubs);
+
+        for (ResponseWithMatcher stub : stubs) {
+            stats.register(stub);
+        }
+    }
+
     public static class ResponseWithMatcher {
         private final MockResponse response;
         private final RequestMatchersGroup matcher;
 
+        private Set<ResponseWithMatcher> bucket;
+        private Scenario scenario;
+        private volatile int indexedVersion;
+        private volatile String indexedScenario;
+        private volatile String scenarioName;
+        private volatile String requiredState;
+        private volatile String newState;
+        private volatile LatencyProfile latency;
+        private volatile FaultProfile faults;
+        private volatile ResponseGenerator generator;
+        private volatile boolean reusable;
+        private volatile boolean served;
+
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+
         ResponseWithMatcher(RequestMatchersGroup matcher, MockResponse response) {
             this.matcher = matcher;
             this.response = response;
@@ -99,5 +727,99 @@ public final class MatcherDispatcher extends Dispatcher {
         public RequestMatchersGroup getMatcher() {
             return matcher;
         }
+
+        void setLatency(LatencyProfile latency) {
+            this.latency = latency;
+        }
+
+        void setFaults(FaultProfile faults) {
+            this.faults = faults;
+        }
+
+        void setGenerator(ResponseGenerator generator) {
+            this.generator = generator;
+        }
+
+        void setReusable(boolean reusable) {
+            this.reusable = reusable;
+        }
+
+        synchronized void setScenario(String scenarioName, String requiredState) {
+            this.requiredState = requiredState;
+            this.scenarioName = scenarioName;
+        }
+
+        // a key was set after the stub was indexed
+        boolean isIndexStale() {
+            return scenarioName != indexedScenario
+                    || matcher != null && matcher.getIndexVersion() != indexedVersion;
+        }
+
+        void setNewState(String newState) {
+
+            if (scenarioName == null) {
+                throw new IllegalStateException("Only stubs in a scenario can set its state");
+            }
+
+            this.newState = newState;
+        }
+    }
+
+    /**
+     * The state of a scenario and its stubs indexed by the state they are eligible in.
+     */
+    private static final class Scenario {
+
+        final AtomicReference<String> state = new AtomicReference<>(SCENARIO_STARTED);
+        final StubIndex byState = new StubIndex();
+
+        Set<ResponseWithMatcher> candidates() {
+            return byState.get(state.get());
+        }
+
+        // only one of the requests racing for the same state moves it
+        boolean transition(String requiredState, String newState) {
+
+            while (true) {
+
+                final String current = state.get();
+
+                if (!requiredState.equals(current)) {
+                    return false;
+                }
+
+                if (newState == null || newState.equals(current)
+                        || state.compareAndSet(current, newState)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    // another request may have matched the same stub concurrently
+    private boolean claim(ResponseWithMatcher response) {
+
+        if (response.scenario != null
+                && !response.scenario.transition(response.requiredState, response.newState)) {
+            return false;
+        }
+
+        if (response.reusable || loadTarget) {
+            if (!response.served) {
+                response.served = true;
+            }
+        } else if (responseSet.remove(response)) {
+            response.bucket.remove(response);
+        } else {
+            return false;
+        }
+
+        final String flow = response.getMatcher().getFlow();
+
+        if (flow != null) {
+            counter(flowOrders, flow).incrementAndGet();
+        }
+
+        return true;
     }
 }
@@ -0,0 +1,169 @@
+package br.com.concretesolutions.requestmatcher;
+
+import org.junit.rules.ExternalResource;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.QueueDispatcher;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * A pool of started {@link MockWebServer}s. A {@link RequestMatcherRule} created with a pool
+ * borrows a server for each test instead of starting and shutting down its own. The server's
+ * dispatcher is swapped by the rule's and its recorded requests are dropped when it is returned.
+ * <p>
+ * Use {@link #shared()} to keep servers for the whole JVM or create one as a
+ * {@link org.junit.ClassRule} to keep them for a test class:
+ * <pre>
+ * &#64;ClassRule
+ * public static final MockWebServerPool pool = new MockWebServerPool();
+ *
+ * &#64;Rule
+ * public final RequestMatcherRule server = new LocalTestRequestMatcherRule(pool);
+ * </pre>
+ * <p>
+ * For tests running in parallel see {@link #multiplexed()}.
+ */
+public class MockWebServerPool extends ExternalResource {
+
+    private static final Logger logger = Logger.getLogger(MockWebServerPool.class.getName());
+
+    private static MockWebServerPool shared;
+
+    private final Queue<MockWebServer> idle = new ConcurrentLinkedQueue<>();
+    private final Set<MockWebServer> servers = Collections.newSetFromMap(
+            new ConcurrentHashMap<MockWebServer, Boolean>());
+
+    /**
+     * A pool whose servers live until the JVM exits.
+     */
+    public static synchronized MockWebServerPool shared() {
+
+        if (shared == null) {
+            final MockWebServerPool pool = new MockWebServerPool();
+            Runtime.getRuntime().addShutdownHook(new Thread("MockWebServerPool shutdown") {
+                @Override
+                public void run() {
+                    pool.shutdown();
+                }
+            });
+            shared = pool;
+        }
+
+        return shared;
+    }
+
+    /**
+     * A pool that serves every rule from a single server, even concurrently. Each rule gets its
+     * own namespace: a path prefix that {@link RequestMatcherRule#url(String)} adds to every url
+     * and that is stripped before matching. Requests are routed to their rule's dispatcher by
+     * namespace so unused fixtures are verified per test.
+     */
+    public static MockWebServerPool multiplexed() {
+        return new MultiplexingPool();
+    }
+
+    /**
+     * Borrows a started server. A new one is started only if all servers are in use.
+     */
+    MockWebServer acquire() {
+
+        final MockWebServer server = idle.poll();
+
+        if (server != null) {
+            return server;
+        }
+
+        final MockWebServer newServer = newServer();
+
+        try {
+            newServer.start();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not start pooled MockWebServer", e);
+        }
+
+        servers.add(newServer);
+        return newServer;
+    }
+
+    /**
+     * Returns a new namespace for a rule or null if servers are not shared between rules.
+     */
+    String newNamespace() {
+        return null;
+    }
+
+    /**
+     * Routes the requests of a namespace to the given dispatcher.
+     */
+    void attach(MockWebServer server, String namespace, MatcherDispatcher dispatcher) {
+        server.setDispatcher(dispatcher);
+    }
+
+    /**
+     * Returns a borrowed server after resetting the state the test left in it.
+     */
+    void release(MockWebServer server, String namespace) {
+
+        server.setDispatcher(new QueueDispatcher());
+        drain(server);
+        idle.add(server);
+    }
+
+    /**
+     * Drops the requests recorded during a test so they don't leak into the next one.
+     */
+    static void drain(MockWebServer server) {
+
+        try {
+            RecordedRequest recorded;
+            do {
+                recorded = server.takeRequest(0, TimeUnit.NANOSECONDS);
+            } while (recorded != null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Creates servers for this pool. Override to configure them before they start.
+     */
+    protected MockWebServer newServer() {
+        return new MockWebServer();
+    }
+
+    /**
+     * Number of servers started by this pool.
+     */
+    public int size() {
+        return servers.size();
+    }
+
+    public void shutdown() {
+
+        for (MockWebServer server : servers) {
+            try {
+                server.shutdown();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Error while shutting down pooled server", e);
+            }
+        }
+
+        servers.clear();
+        idle.clear();
+    }
+
+    @Override
+    protected void after() {
+        shutdown();
+    }
+}
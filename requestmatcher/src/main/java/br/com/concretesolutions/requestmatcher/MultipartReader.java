@@ -0,0 +1,166 @@
+package br.com.concretesolutions.requestmatcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import br.com.concretesolutions.requestmatcher.model.Multipart;
+import okhttp3.Headers;
+import okio.BufferedSource;
+import okio.ByteString;
+
+/**
+ * Single pass boundary scanner for multipart bodies. It only reads the part headers and records
+ * where each part body starts and ends. Part bodies are skipped, never copied.
+ */
+final class MultipartReader {
+
+    private static final String BOUNDARY_PARAM = "boundary=";
+
+    private final ParsedRequest request;
+    private final ByteString dashBoundary;
+    private final ByteString crlfDashBoundary;
+
+    private long position;
+
+    MultipartReader(ParsedRequest request, String boundary) {
+        this.request = request;
+        this.dashBoundary = ByteString.encodeUtf8("--" + boundary);
+        this.crlfDashBoundary = ByteString.encodeUtf8("\r\n--" + boundary);
+    }
+
+    static String boundaryOf(String contentType) {
+
+        if (contentType == null
+                || !contentType.toLowerCase(Locale.US).startsWith("multipart/")) {
+            return null;
+        }
+
+        for (String parameter : contentType.split(";")) {
+            final String trimmed = parameter.trim();
+
+            if (trimmed.regionMatches(true, 0, BOUNDARY_PARAM, 0, BOUNDARY_PARAM.length())) {
+                return unquote(trimmed.substring(BOUNDARY_PARAM.length()));
+            }
+        }
+
+        return null;
+    }
+
+    Multipart read() throws IOException {
+
+        final BufferedSource source = request.openBody();
+        final List<Multipart.BodyPart> parts = new ArrayList<>();
+
+        // the preamble before the first boundary is ignored
+        final long first = source.indexOf(dashBoundary);
+
+        if (first == -1) {
+            return new Multipart(parts);
+        }
+
+        skip(source, first + dashBoundary.size());
+
+        while (!isCloseDelimiter(source)) {
+
+            skipLine(source); // transport padding after the boundary
+
+            final Headers headers = readHeaders(source);
+            final long bodyOffset = position;
+            final long bodySize = source.indexOf(crlfDashBoundary);
+
+            if (bodySize == -1) {
+                throw new IOException("Multipart body ended before the closing boundary");
+            }
+
+            skip(source, bodySize + crlfDashBoundary.size());
+            parts.add(newPart(headers, bodyOffset, bodySize));
+        }
+
+        return new Multipart(parts);
+    }
+
+    private Multipart.BodyPart newPart(Headers headers, long bodyOffset, long bodySize) {
+
+        String name = null;
+        String filename = null;
+
+        final String disposition = headers.get("Content-Disposition");
+
+        if (disposition != null) {
+            for (String parameter : disposition.split(";")) {
+                final int equals = parameter.indexOf('=');
+
+                if (equals == -1) {
+                    continue;
+                }
+
+                final String key = parameter.substring(0, equals).trim();
+                final String value = unquote(parameter.substring(equals + 1).trim());
+
+                if ("name".equalsIgnoreCase(key)) {
+                    name = value;
+                } else if ("filename".equalsIgnoreCase(key)) {
+                    filename = value;
+                }
+            }
+        }
+
+        return new Multipart.BodyPart(request, headers, name, filename, bodyOffset, bodySize);
+    }
+
+    private boolean isCloseDelimiter(BufferedSource source) throws IOException {
+        return !source.request(2)
+                || source.buffer().getByte(0) == '-' && source.buffer().getByte(1) == '-';
+    }
+
+    private Headers readHeaders(BufferedSource source) throws IOException {
+
+        final Headers.Builder builder = new Headers.Builder();
+
+        for (String line = readLine(source); !line.isEmpty(); line = readLine(source)) {
+            builder.add(line);
+        }
+
+        return builder.build();
+    }
+
+    private String readLine(BufferedSource source) throws IOException {
+
+        final long newLine = source.indexOf((byte) '\n');
+
+        if (newLine == -1) {
+            throw new IOException("Multipart body ended inside the part headers");
+        }
+
+        final String line = source.readUtf8(newLine);
+        skip(source, 1);
+        position += newLine;
+
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+
+    private void skipLine(BufferedSource source) throws IOException {
+
+        final long newLine = source.indexOf((byte) '\n');
+
+        if (newLine == -1) {
+            throw new IOException("Multipart body ended after a boundary");
+        }
+
+        skip(source, newLine + 1);
+    }
+
+    private void skip(BufferedSource source, long byteCount) throws IOException {
+        source.skip(byteCount);
+        position += byteCount;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,57 @@
+package br.com.concretesolutions.requestmatcher;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * A {@link MockWebServerPool} with a single server shared by all rules at the same time.
+ */
+final class MultiplexingPool extends MockWebServerPool {
+
+    private final AtomicInteger namespaces = new AtomicInteger();
+    private final NamespaceDispatcher dispatcher = new NamespaceDispatcher();
+
+    private MockWebServer server;
+    private int borrowers;
+
+    @Override
+    synchronized MockWebServer acquire() {
+
+        if (server == null) {
+            server = super.acquire();
+            server.setDispatcher(dispatcher);
+        }
+
+        borrowers++;
+        return server;
+    }
+
+    @Override
+    String newNamespace() {
+        return NamespaceDispatcher.PREFIX + namespaces.incrementAndGet();
+    }
+
+    @Override
+    void attach(MockWebServer server, String namespace, MatcherDispatcher dispatcher) {
+        this.dispatcher.register(namespace, dispatcher);
+    }
+
+    @Override
+    synchronized void release(MockWebServer server, String namespace) {
+
+        dispatcher.unregister(namespace);
+
+        // the queue is shared, the requests of the rules still running are left in it
+        if (--borrowers == 0) {
+            drain(server);
+        }
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        super.shutdown();
+        server = null;
+        borrowers = 0;
+    }
+}
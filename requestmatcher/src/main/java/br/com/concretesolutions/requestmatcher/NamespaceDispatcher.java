@@ -0,0 +1,48 @@
+package br.com.concretesolutions.requestmatcher;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Routes requests to the {@link MatcherDispatcher} of the rule that owns the namespace in the
+ * first path segment. The namespace is stripped from the path before matching.
+ */
+final class NamespaceDispatcher extends Dispatcher {
+
+    static final String PREFIX = "~rm";
+
+    private final ConcurrentMap<String, MatcherDispatcher> dispatchers = new ConcurrentHashMap<>();
+
+    void register(String namespace, MatcherDispatcher dispatcher) {
+        dispatchers.put(namespace, dispatcher);
+    }
+
+    void unregister(String namespace) {
+        dispatchers.remove(namespace);
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+
+        final String path = request.getPath();
+        int end = 1;
+
+        while (end < path.length() && path.charAt(end) != '/' && path.charAt(end) != '?') {
+            end++;
+        }
+
+        final MatcherDispatcher dispatcher = dispatchers.get(path.substring(1, end));
+
+        if (dispatcher == null) {
+            return new MockResponse()
+                    .setResponseCode(404)
+                    .setBody("No test is running for namespace of path " + path);
+        }
+
+        return dispatcher.dispatch(request, end);
+    }
+}
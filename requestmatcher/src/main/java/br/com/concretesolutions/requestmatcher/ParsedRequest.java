@@ -0,0 +1,373 @@
+package br.com.concretesolutions.requestmatcher;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import br.com.concretesolutions.requestmatcher.matchers.JsonPathPredicates;
+import br.com.concretesolutions.requestmatcher.model.GraphQlOperation;
+import br.com.concretesolutions.requestmatcher.model.HttpMethod;
+import br.com.concretesolutions.requestmatcher.model.Multipart;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+
+/**
+ * Lazily computed views over a {@link RecordedRequest}. Each view is computed at most once per
+ * request and shared by every {@link RequestMatchersGroup} the dispatcher tries for it.
+ * <p>
+ * Custom matchers groups can get the instance for the request being dispatched through
+ * {@link #of(RecordedRequest)}.
+ */
+public final class ParsedRequest {
+
+    private static final ThreadLocal<ParsedRequest> CURRENT = new ThreadLocal<>();
+    private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+    // application/json and its variants, like application/graphql+json
+    private static final String JSON = "json";
+
+    private RecordedRequest request;
+    private int pathPrefixLength;
+    private boolean reusable;
+
+    private String routingKey;
+    private MatcherDispatcher dispatcher;
+    private int pathOrder;
+    private int routingKeyOrder;
+    private HttpMethod method;
+    private String fullPath;
+    private String path;
+    private Map<String, String> queries;
+    private Map<String, String> headers;
+    private String bodyUtf8;
+    private Object jsonDocument;
+    private boolean jsonParsed;
+    private Map<String, String> form;
+    private GraphQlOperation graphQlOperation;
+    private boolean graphQlParsed;
+    private Multipart multipart;
+    private boolean multipartParsed;
+
+    // dispatch stats, only written by the dispatcher
+    int candidatesTried;
+    long matchingNanos;
+    // matched but claimed by a concurrent request. Misses only if no other stub serves this one
+    List<MatcherDispatcher.ResponseWithMatcher> lostClaims;
+
+    // fault drawn for the matched stub, only written by the dispatcher
+    FaultProfile faults;
+    FaultProfile.Fault fault;
+
+    private ParsedRequest(RecordedRequest request, int pathPrefixLength) {
+        this.request = request;
+        this.pathPrefixLength = pathPrefixLength;
+    }
+
+    /**
+     * Returns the views for the given request. When called during dispatching this is the same
+     * instance shared by all matchers groups. Otherwise a new one is created.
+     */
+    public static ParsedRequest of(@NonNull final RecordedRequest request) {
+        final ParsedRequest current = CURRENT.get();
+
+        if (current != null && current.request == request) {
+            return current;
+        }
+
+        return new ParsedRequest(request, 0);
+    }
+
+    static ParsedRequest begin(RecordedRequest request, int pathPrefixLength) {
+        final ParsedRequest parsedRequest = new ParsedRequest(request, pathPrefixLength);
+        CURRENT.set(parsedRequest);
+        return parsedRequest;
+    }
+
+    /**
+     * Same as {@link #begin(RecordedRequest, int)} but recycles the instance of the previous
+     * request dispatched in this thread. Views must not be kept after the request is dispatched.
+     */
+    static ParsedRequest beginReusing(RecordedRequest request, int pathPrefixLength) {
+
+        ParsedRequest parsedRequest = CURRENT.get();
+
+        if (parsedRequest == null || !parsedRequest.reusable) {
+            parsedRequest = new ParsedRequest(request, pathPrefixLength);
+            parsedRequest.reusable = true;
+            CURRENT.set(parsedRequest);
+        } else {
+            parsedRequest.reset(request, pathPrefixLength);
+        }
+
+        return parsedRequest;
+    }
+
+    static void end() {
+
+        final ParsedRequest current = CURRENT.get();
+
+        if (current != null && current.reusable) {
+            // keep the instance for the next request but drop every reference to this one
+            current.reset(null, 0);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    private void reset(RecordedRequest request, int pathPrefixLength) {
+        this.request = request;
+        this.pathPrefixLength = pathPrefixLength;
+        routingKey = null;
+        dispatcher = null;
+        pathOrder = 0;
+        routingKeyOrder = 0;
+        method = null;
+        fullPath = null;
+        path = null;
+        queries = null;
+        headers = null;
+        bodyUtf8 = null;
+        jsonDocument = null;
+        jsonParsed = false;
+        form = null;
+        graphQlOperation = null;
+        graphQlParsed = false;
+        multipart = null;
+        multipartParsed = false;
+        candidatesTried = 0;
+        matchingNanos = 0;
+        lostClaims = null;
+        faults = null;
+        fault = null;
+    }
+
+    void lostClaim(MatcherDispatcher.ResponseWithMatcher stub) {
+        if (lostClaims == null) {
+            lostClaims = new ArrayList<>(1);
+        }
+        lostClaims.add(stub);
+    }
+
+    public RecordedRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * The routing key extracted by the dispatcher's {@link RoutingKeyExtractor} or null if there
+     * is none.
+     */
+    @Nullable
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    void setRoutingKey(String routingKey) {
+        this.routingKey = routingKey;
+    }
+
+    void setOrders(MatcherDispatcher dispatcher, int pathOrder, int routingKeyOrder) {
+        this.dispatcher = dispatcher;
+        this.pathOrder = pathOrder;
+        this.routingKeyOrder = routingKeyOrder;
+    }
+
+    /**
+     * The order of this request among the requests to the same path. Zero when not dispatching.
+     */
+    public int getPathOrder() {
+        return pathOrder;
+    }
+
+    /**
+     * The order of this request among the requests with the same routing key. Zero when there is
+     * no routing key.
+     */
+    public int getRoutingKeyOrder() {
+        return routingKeyOrder;
+    }
+
+    /**
+     * The order this request would have in the given flow: one more than the number of requests
+     * already served by groups of that flow. Zero when not dispatching.
+     */
+    public int getFlowOrder(String flow) {
+        return dispatcher != null ? dispatcher.nextFlowOrder(flow) : 0;
+    }
+
+    public HttpMethod getMethod() {
+        if (method == null) {
+            method = HttpMethod.forRequest(request);
+        }
+        return method;
+    }
+
+    /**
+     * The path with the query string. When the rule shares its server with other rules the
+     * namespace prefix is not included.
+     */
+    public String getFullPath() {
+        if (fullPath == null) {
+            final String requestPath = request.getPath();
+
+            if (pathPrefixLength == 0) {
+                fullPath = requestPath;
+            } else if (pathPrefixLength == requestPath.length()
+                    || requestPath.charAt(pathPrefixLength) == '?') {
+                fullPath = '/' + requestPath.substring(pathPrefixLength);
+            } else {
+                fullPath = requestPath.substring(pathPrefixLength);
+            }
+        }
+        return fullPath;
+    }
+
+    /**
+     * The path without the query string.
+     */
+    public String getPath() {
+        if (path == null) {
+            final String requestPath = getFullPath();
+            final int queryStart = requestPath.indexOf('?');
+            path = queryStart == -1 ? requestPath : requestPath.substring(0, queryStart);
+        }
+        return path;
+    }
+
+    public Map<String, String> getQueries() {
+        if (queries == null) {
+            final String requestPath = getFullPath();
+            queries = requestPath.contains("?")
+                    ? RequestUtils.buildQueryMap(requestPath)
+                    : Collections.<String, String>emptyMap();
+        }
+        return queries;
+    }
+
+    public Map<String, String> getHeaders() {
+        if (headers == null) {
+            headers = RequestUtils.buildHeadersMap(request.getHeaders());
+        }
+        return headers;
+    }
+
+    /**
+     * The body decoded as UTF-8. Decoded only once and only if some matcher needs it.
+     */
+    public String getBodyUtf8() {
+        if (bodyUtf8 == null) {
+            // clone the body! perhaps we need the request body for a future assertion.
+            bodyUtf8 = request.getBody().clone().readUtf8();
+        }
+        return bodyUtf8;
+    }
+
+    /**
+     * The body parsed as JSON by the JSON path provider or null if it is not valid JSON. Parsed
+     * only once per request. Requires the optional JSON path dependency.
+     */
+    @Nullable
+    public Object getJsonDocument() {
+        if (!jsonParsed) {
+            jsonParsed = true;
+            jsonDocument = JsonPathPredicates.parse(getBodyUtf8());
+        }
+        return jsonDocument;
+    }
+
+    /**
+     * The GraphQL operation of the request or null if this is not a GraphQL request or its
+     * document can't be read. Only GETs with a query and bodies with a JSON Content-Type are
+     * read. Extracted only once per request. Requires the optional JSON path dependency.
+     */
+    @Nullable
+    public GraphQlOperation getGraphQlOperation() {
+        if (!graphQlParsed) {
+            graphQlParsed = true;
+            if (!mayBeGraphQl()) {
+                // uploads and other bodies are not decoded just to find out
+                return null;
+            }
+            try {
+                graphQlOperation = GraphQlParser.parse(this);
+            } catch (RuntimeException e) {
+                // any request can be checked for an operation, most of them are not GraphQL
+                graphQlOperation = null;
+            }
+        }
+        return graphQlOperation;
+    }
+
+    private boolean mayBeGraphQl() {
+
+        if ("GET".equals(request.getMethod())) {
+            return request.getPath().indexOf('?') != -1;
+        }
+
+        final String contentType = request.getHeader("Content-Type");
+        return contentType != null && contentType.toLowerCase(Locale.US).contains(JSON);
+    }
+
+    /**
+     * The body decoded as an application/x-www-form-urlencoded form. Decoded only once per request.
+     * Empty if the request has another Content-Type or the body is not a valid form.
+     */
+    public Map<String, String> getForm() {
+        if (form == null) {
+            form = isForm()
+                    ? RequestUtils.buildFormMap(request.getBody())
+                    : Collections.<String, String>emptyMap();
+        }
+        return form;
+    }
+
+    private boolean isForm() {
+        final String contentType = request.getHeader("Content-Type");
+        return contentType != null
+                && contentType.regionMatches(true, 0, FORM_CONTENT_TYPE, 0, FORM_CONTENT_TYPE.length());
+    }
+
+    /**
+     * Opens a new source over the request body. The body is not consumed.
+     */
+    public BufferedSource openBody() {
+        return request.getBody().clone();
+    }
+
+    /**
+     * Reads a range of the request body without copying the rest of it.
+     */
+    public ByteString readBody(long offset, long byteCount) {
+        final Buffer range = new Buffer();
+        request.getBody().copyTo(range, offset, byteCount);
+        return range.readByteString();
+    }
+
+    /**
+     * The multipart view of the body or null if the request is not a multipart request. The body
+     * is scanned only once for boundaries and no part body is copied until a matcher reads it.
+     */
+    @Nullable
+    public Multipart getMultipart() {
+        if (!multipartParsed) {
+            multipartParsed = true;
+
+            final String boundary = MultipartReader.boundaryOf(request.getHeader("Content-Type"));
+
+            if (boundary != null) {
+                try {
+                    multipart = new MultipartReader(this, boundary).read();
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not parse multipart body", e);
+                }
+            }
+        }
+        return multipart;
+    }
+}
@@ -0,0 +1,527 @@
+package br.com.concretesolutions.requestmatcher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import br.com.concretesolutions.requestmatcher.model.HttpMethod;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+
+/**
+ * Proxies the requests no fixture matched to an upstream server and writes every exchange as a
+ * fixture file. When the test finishes an index of the exchanges, read back by
+ * {@link RequestMatcherRule#replay(String)}, and the equivalent Java stubs are written next to
+ * the fixtures.
+ */
+final class Recorder {
+
+    static final String INDEX_FILE = "recordings.json";
+    static final String STUBS_FILE = "RecordedStubs.java";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAX_SLUG_LENGTH = 40;
+
+    // set by the client or the connection itself, never recorded
+    private static final String[] HOP_BY_HOP_REQUEST_HEADERS = {
+            "Host", "Content-Length", "Transfer-Encoding", "Connection", "Accept-Encoding"
+    };
+    private static final String[] HOP_BY_HOP_RESPONSE_HEADERS = {
+            "Content-Length", "Transfer-Encoding", "Connection", "Content-Encoding"
+    };
+
+    private final HttpUrl upstream;
+    private final File outputDirectory;
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final List<Exchange> exchanges = new ArrayList<>();
+
+    private OkHttpClient client;
+    private File directory;
+    private String packageName;
+
+    Recorder(HttpUrl upstream, File outputDirectory) {
+        this.upstream = upstream;
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * Starts recording into a folder named after the test. The Java stubs are written in the
+     * package of the test, empty for the default package.
+     */
+    synchronized void begin(String testName, String packageName) {
+        directory = new File(outputDirectory, testName.replaceAll("[^A-Za-z0-9_.-]", "_"));
+        this.packageName = packageName;
+        exchanges.clear();
+        sequence.set(0);
+    }
+
+    /**
+     * Sends the request to the upstream server, writes the response body as a fixture and returns
+     * the response to serve.
+     */
+    MockResponse proxy(ParsedRequest parsedRequest) throws IOException {
+
+        final RecordedRequest request = parsedRequest.getRequest();
+        final String method = request.getMethod();
+        final Response response = client().newCall(new Request.Builder()
+                .url(upstreamUrl(parsedRequest.getFullPath()))
+                .headers(filter(request.getHeaders(), HOP_BY_HOP_REQUEST_HEADERS))
+                .method(method, requestBody(request))
+                .build()).execute();
+
+        final ResponseBody responseBody = response.body();
+        final byte[] body = responseBody != null ? responseBody.bytes() : new byte[0];
+
+        final Headers headers = filter(response.headers(), HOP_BY_HOP_RESPONSE_HEADERS);
+        final Exchange exchange = new Exchange(method, parsedRequest.getPath(),
+                new LinkedHashMap<>(parsedRequest.getQueries()), response.code(), response.message(),
+                headers, fixtureName(method, parsedRequest.getPath(), headers.get("Content-Type")));
+
+        exchange.observedPathOrder = parsedRequest.getPathOrder();
+        write(body, exchange.fixture);
+
+        synchronized (this) {
+            exchanges.add(exchange);
+        }
+
+        return exchange.toResponse(body);
+    }
+
+    /**
+     * Writes the index and the Java stubs of the exchanges recorded since {@link #begin(String)}.
+     * Nothing is written if no request was proxied.
+     */
+    synchronized void finish() throws IOException {
+
+        if (exchanges.isEmpty()) {
+            return;
+        }
+
+        assignPathOrders(exchanges);
+        mkdirs(directory);
+
+        final JsonWriter writer = new JsonWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(directory, INDEX_FILE)), UTF_8));
+
+        try {
+            writeIndex(writer, exchanges);
+        } finally {
+            writer.close();
+        }
+
+        final Writer stubs = new OutputStreamWriter(
+                new FileOutputStream(new File(directory, STUBS_FILE)), UTF_8);
+
+        try {
+            writeStubs(stubs, packageName, directory.getName(), exchanges);
+        } finally {
+            stubs.close();
+        }
+    }
+
+    private synchronized OkHttpClient client() {
+
+        if (client == null) {
+            client = new OkHttpClient.Builder()
+                    .followRedirects(false)
+                    .followSslRedirects(false)
+                    .readTimeout(1, TimeUnit.MINUTES)
+                    .build();
+        }
+
+        return client;
+    }
+
+    private HttpUrl upstreamUrl(String fullPath) {
+
+        final String base = upstream.toString();
+        final String url = (base.endsWith("/") ? base.substring(0, base.length() - 1) : base) + fullPath;
+        final HttpUrl parsed = HttpUrl.parse(url);
+
+        if (parsed == null) {
+            throw new IllegalArgumentException("Invalid upstream url " + url);
+        }
+
+        return parsed;
+    }
+
+    private static RequestBody requestBody(RecordedRequest request) {
+
+        final String method = request.getMethod();
+        final boolean required = "POST".equals(method) || "PUT".equals(method)
+                || "PATCH".equals(method);
+        final boolean permitted = !"GET".equals(method) && !"HEAD".equals(method);
+
+        if (!required && (!permitted || request.getBodySize() == 0)) {
+            return null;
+        }
+
+        final String contentType = request.getHeader("Content-Type");
+        return RequestBody.create(contentType != null ? MediaType.parse(contentType) : null,
+                request.getBody().snapshot());
+    }
+
+    private static Headers filter(Headers headers, String[] excluded) {
+
+        final Headers.Builder builder = headers.newBuilder();
+
+        for (String name : excluded) {
+            builder.removeAll(name);
+        }
+
+        return builder.build();
+    }
+
+    private String fixtureName(String method, String path, String contentType) {
+
+        String slug = path.replaceAll("[^A-Za-z0-9]+", "_").replaceAll("^_+|_+$", "");
+
+        if (slug.length() > MAX_SLUG_LENGTH) {
+            slug = slug.substring(0, MAX_SLUG_LENGTH);
+        }
+
+        return String.format(Locale.US, "%04d_%s%s%s", sequence.incrementAndGet(), method,
+                slug.isEmpty() ? "" : '_' + slug, extension(contentType));
+    }
+
+    private static String extension(String contentType) {
+
+        if (contentType == null) {
+            return ".bin";
+        }
+
+        final String type = contentType.toLowerCase(Locale.US);
+
+        if (type.contains("json")) {
+            return ".json";
+        } else if (type.contains("xml")) {
+            return ".xml";
+        } else if (type.contains("html")) {
+            return ".html";
+        } else if (type.startsWith("text/")) {
+            return ".txt";
+        }
+
+        return ".bin";
+    }
+
+    private void write(byte[] body, String fixture) throws IOException {
+
+        final File target;
+
+        synchronized (this) {
+            mkdirs(directory);
+            target = new File(directory, fixture);
+        }
+
+        final BufferedSink sink = Okio.buffer(Okio.sink(target));
+
+        try {
+            sink.write(body);
+        } finally {
+            sink.close();
+        }
+    }
+
+    private static void mkdirs(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+    }
+
+    // requests repeated with the same method, path and queries are told apart by the order they
+    // arrived at their path, counting the ones served by other fixtures too
+    private static void assignPathOrders(List<Exchange> exchanges) {
+
+        final Map<String, Integer> counts = new HashMap<>();
+
+        for (Exchange exchange : exchanges) {
+            final Integer count = counts.get(exchange.key());
+            counts.put(exchange.key(), count == null ? 1 : count + 1);
+        }
+
+        for (Exchange exchange : exchanges) {
+            exchange.pathOrder = counts.get(exchange.key()) > 1 ? exchange.observedPathOrder : 0;
+        }
+    }
+
+    private static void writeIndex(JsonWriter writer, List<Exchange> exchanges) throws IOException {
+
+        writer.beginObject().name("exchanges").beginArray();
+
+        for (Exchange exchange : exchanges) {
+
+            writer.beginObject()
+                    .name("method").value(exchange.method)
+                    .name("path").value(exchange.path);
+
+            if (!exchange.queries.isEmpty()) {
+                writer.name("query").beginObject();
+
+                for (Map.Entry<String, String> query : exchange.queries.entrySet()) {
+                    writer.name(query.getKey()).value(query.getValue());
+                }
+
+                writer.endObject();
+            }
+
+            if (exchange.pathOrder > 0) {
+                writer.name("pathOrder").value(exchange.pathOrder);
+            }
+
+            writer.name("status").value(exchange.status)
+                    .name("reason").value(exchange.reason)
+                    .name("headers").beginArray();
+
+            for (int i = 0; i < exchange.headers.size(); i++) {
+                writer.beginArray()
+                        .value(exchange.headers.name(i))
+                        .value(exchange.headers.value(i))
+                        .endArray();
+            }
+
+            writer.endArray()
+                    .name("fixture").value(exchange.fixture)
+                    .endObject();
+        }
+
+        writer.endArray().endObject();
+    }
+
+    private static void writeStubs(Writer out, String packageName, String folder,
+                                   List<Exchange> exchanges) throws IOException {
+
+        out.write("// Recorded by RequestMatcherRule. Copy the folder " + folder
+                + " into your fixtures folder and call\n"
+                + "// RecordedStubs.add(server, \"" + folder + "/\") to register these stubs.\n");
+
+        if (!packageName.isEmpty()) {
+            out.write("package " + packageName + ";\n");
+        }
+
+        // the file is compiled as is, next to the test it was recorded by
+        out.write("\nimport " + RequestMatcherRule.class.getName() + ";\n"
+                + "import " + HttpMethod.class.getName() + ";\n"
+                + "import " + MockResponse.class.getName() + ";\n"
+                + "import " + Buffer.class.getName() + ";\n\n"
+                + "final class RecordedStubs {\n\n"
+                + "    static void add(RequestMatcherRule server, String folder) {\n");
+
+        for (Exchange exchange : exchanges) {
+
+            out.write("\n        server.addResponse(new MockResponse()\n");
+
+            if (exchange.reason != null) {
+                out.write("                .setStatus(" + literal("HTTP/1.1 " + exchange.status
+                        + ' ' + exchange.reason) + ")\n");
+            } else {
+                out.write("                .setResponseCode(" + exchange.status + ")\n");
+            }
+
+            for (int i = 0; i < exchange.headers.size(); i++) {
+                out.write("                .addHeader(" + literal(exchange.headers.name(i)) + ", "
+                        + literal(exchange.headers.value(i)) + ")\n");
+            }
+
+            out.write("                .setBody(new Buffer().write(server.readBinaryFixture(folder + "
+                    + literal(exchange.fixture) + "))))\n"
+                    + "                .ifRequestMatches()\n"
+                    + "                .methodIs(HttpMethod." + exchange.method + ")\n"
+                    + "                .pathIs(" + literal(exchange.path) + ")");
+
+            for (Map.Entry<String, String> query : exchange.queries.entrySet()) {
+                out.write("\n                .queriesContain(" + literal(query.getKey()) + ", "
+                        + literal(query.getValue()) + ")");
+            }
+
+            if (exchange.pathOrder > 0) {
+                out.write("\n                .pathOrderIs(" + exchange.pathOrder + ")");
+            }
+
+            out.write(";\n");
+        }
+
+        out.write("    }\n}\n");
+    }
+
+    private static String literal(String value) {
+
+        final StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+
+            final char c = value.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                sb.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Reads the exchanges of an index written by {@link #finish()}. Unknown fields are skipped.
+     */
+    static List<Exchange> readIndex(Reader in) throws IOException {
+
+        final JsonReader reader = new JsonReader(in);
+        final List<Exchange> exchanges = new ArrayList<>();
+
+        try {
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+
+                if (!"exchanges".equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+
+                reader.beginArray();
+
+                while (reader.hasNext()) {
+                    exchanges.add(readExchange(reader));
+                }
+
+                reader.endArray();
+            }
+
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+
+        return exchanges;
+    }
+
+    private static Exchange readExchange(JsonReader reader) throws IOException {
+
+        String method = null;
+        String path = null;
+        final Map<String, String> queries = new LinkedHashMap<>();
+        int pathOrder = 0;
+        int status = 200;
+        String reason = null;
+        final Headers.Builder headers = new Headers.Builder();
+        String fixture = null;
+
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+
+            final String name = reader.nextName();
+
+            if ("method".equals(name)) {
+                method = reader.nextString();
+            } else if ("path".equals(name)) {
+                path = reader.nextString();
+            } else if ("query".equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    queries.put(reader.nextName(), reader.nextScalar());
+                }
+                reader.endObject();
+            } else if ("pathOrder".equals(name)) {
+                pathOrder = reader.nextInt();
+            } else if ("status".equals(name)) {
+                status = reader.nextInt();
+            } else if ("reason".equals(name)) {
+                reason = reader.nextScalar();
+            } else if ("headers".equals(name)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    reader.beginArray();
+                    headers.add(reader.nextString(), reader.nextString());
+                    reader.endArray();
+                }
+                reader.endArray();
+            } else if ("fixture".equals(name)) {
+                fixture = reader.nextScalar();
+            } else {
+                reader.skipValue();
+            }
+        }
+
+        reader.endObject();
+
+        if (method == null || path == null) {
+            throw new IOException("Recorded exchange without method or path");
+        }
+
+        final Exchange exchange =
+                new Exchange(method, path, queries, status, reason, headers.build(), fixture);
+        exchange.pathOrder = pathOrder;
+        return exchange;
+    }
+
+    static final class Exchange {
+
+        final String method;
+        final String path;
+        final Map<String, String> queries;
+        final int status;
+        final String reason;
+        final Headers headers;
+        final String fixture;
+        int pathOrder;
+        int observedPathOrder;
+
+        Exchange(String method, String path, Map<String, String> queries, int status,
+                 String reason, Headers headers, String fixture) {
+            this.method = method;
+            this.path = path;
+            this.queries = queries;
+            this.status = status;
+            this.reason = reason;
+            this.headers = headers;
+            this.fixture = fixture;
+        }
+
+        String key() {
+            return method + ' ' + path + '?' + queries;
+        }
+
+        MockResponse toResponse(byte[] body) {
+
+            final MockResponse response = new MockResponse()
+                    .setHeaders(headers)
+                    .setBody(new Buffer().write(body));
+
+            if (reason != null) {
+                response.setStatus("HTTP/1.1 " + status + ' ' + reason);
+            } else {
+                response.setResponseCode(status);
+            }
+
+            return response;
+        }
+    }
+}
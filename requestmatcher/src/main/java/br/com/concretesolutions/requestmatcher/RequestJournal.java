@@ -0,0 +1,407 @@
+package br.com.concretesolutions.requestmatcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import okhttp3.Headers;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * A bounded journal of the requests dispatched by a {@link RequestMatcherRule}. Only the last
+ * capacity requests are kept, with as much of their bodies as the {@link BodyRetention} allows,
+ * while the number of requests served by each {@link RequestMatchersGroup} is counted for the
+ * whole test.
+ * <p>
+ * {@link MockWebServer} keeps every {@link RecordedRequest} with its body until it is shut down.
+ * While the journal is on, the server's queue is drained as requests arrive so long running tests
+ * don't grow the heap. Query the journal instead of calling takeRequest:
+ * <pre>
+ * RequestMatchersGroup login = server.addFixture(200, "login.json")
+ *     .ifRequestMatches()
+ *     .pathIs("/login");
+ *
+ * // exercise the client
+ *
+ * server.verify(login).calledTimes(1);
+ * assertThat(server.requestsTo("/logout"), is(empty()));
+ * </pre>
+ */
+public final class RequestJournal {
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong unmatched = new AtomicLong();
+    private final ConcurrentMap<RequestMatchersGroup, AtomicLong> calls = new ConcurrentHashMap<>();
+    private final BodyRetention retention;
+
+    private volatile MockWebServer server;
+
+    RequestJournal(int capacity, BodyRetention retention) {
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+
+        this.entries = new AtomicReferenceArray<>(capacity);
+        this.retention = retention;
+    }
+
+    /**
+     * Records a dispatched request. The matcher is null if no stub matched it.
+     */
+    void record(ParsedRequest request, RequestMatchersGroup matcher) {
+
+        final long current = sequence.getAndIncrement();
+        final Entry evicted = entries.getAndSet((int) (current % entries.length()),
+                new Entry(current, request, matcher, retention));
+
+        if (evicted != null) {
+            evicted.body.discard();
+        }
+
+        if (matcher == null) {
+            unmatched.incrementAndGet();
+        } else {
+            callCounter(matcher).incrementAndGet();
+        }
+
+        drain();
+    }
+
+    /**
+     * Sets the server whose request queue is drained as requests are recorded.
+     */
+    void setServer(MockWebServer server) {
+        this.server = server;
+    }
+
+    private void drain() {
+
+        final MockWebServer queueOwner = server;
+
+        if (queueOwner == null) {
+            return;
+        }
+
+        try {
+            // the server queues each request before dispatching it so there is at least one
+            queueOwner.takeRequest(0, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Deletes the files of the spilled bodies still kept. Called when the test finishes.
+     */
+    void discardSpilledBodies() {
+        for (int i = 0; i < entries.length(); i++) {
+
+            final Entry entry = entries.get(i);
+
+            if (entry != null) {
+                entry.body.discard();
+            }
+        }
+    }
+
+    private AtomicLong callCounter(RequestMatchersGroup matcher) {
+
+        AtomicLong counter = calls.get(matcher);
+
+        if (counter == null) {
+            final AtomicLong newCounter = new AtomicLong();
+            counter = calls.putIfAbsent(matcher, newCounter);
+
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+
+        return counter;
+    }
+
+    public int getCapacity() {
+        return entries.length();
+    }
+
+    /**
+     * Number of requests recorded since the test started, including the ones no longer kept.
+     */
+    public long getRecordedCount() {
+        return sequence.get();
+    }
+
+    /**
+     * Number of requests that matched no stub since the test started.
+     */
+    public long getUnmatchedCount() {
+        return unmatched.get();
+    }
+
+    /**
+     * Number of requests served by the given group since the test started.
+     */
+    public long getCallCount(RequestMatchersGroup matcher) {
+        final AtomicLong counter = calls.get(matcher);
+        return counter != null ? counter.get() : 0;
+    }
+
+    /**
+     * The kept requests, oldest first.
+     */
+    public List<Entry> getEntries() {
+
+        final long end = sequence.get();
+        final long start = Math.max(0, end - entries.length());
+        final List<Entry> kept = new ArrayList<>((int) (end - start));
+
+        for (long i = start; i < end; i++) {
+
+            final Entry entry = entries.get((int) (i % entries.length()));
+
+            // skip slots already reused by newer requests or not written yet
+            if (entry != null && entry.sequence == i) {
+                kept.add(entry);
+            }
+        }
+
+        return kept;
+    }
+
+    /**
+     * The kept requests to the given path, without the query string, oldest first.
+     */
+    public List<Entry> requestsTo(String path) {
+
+        final List<Entry> matching = new ArrayList<>();
+
+        for (Entry entry : getEntries()) {
+            if (entry.path.equals(path)) {
+                matching.add(entry);
+            }
+        }
+
+        return matching;
+    }
+
+    /**
+     * The kept requests served by the given group, oldest first.
+     */
+    public List<Entry> requestsMatchedBy(RequestMatchersGroup matcher) {
+
+        final List<Entry> matching = new ArrayList<>();
+
+        for (Entry entry : getEntries()) {
+            if (entry.matcher == matcher) {
+                matching.add(entry);
+            }
+        }
+
+        return matching;
+    }
+
+    /**
+     * The kept requests that matched no stub, oldest first.
+     */
+    public List<Entry> unmatchedRequests() {
+        return requestsMatchedBy(null);
+    }
+
+    public Verification verify(RequestMatchersGroup matcher) {
+        return new Verification(this, matcher);
+    }
+
+    /**
+     * Assertions on the number of requests a group served.
+     */
+    public static final class Verification {
+
+        private final RequestJournal journal;
+        private final RequestMatchersGroup matcher;
+
+        Verification(RequestJournal journal, RequestMatchersGroup matcher) {
+            this.journal = journal;
+            this.matcher = matcher;
+        }
+
+        public Verification calledTimes(long times) {
+            assertThat(message(), journal.getCallCount(matcher), is(times));
+            return this;
+        }
+
+        public Verification calledAtLeast(long times) {
+            assertThat(message(), journal.getCallCount(matcher), greaterThanOrEqualTo(times));
+            return this;
+        }
+
+        public Verification neverCalled() {
+            return calledTimes(0);
+        }
+
+        /**
+         * The requests served by the group that are still kept in the journal.
+         */
+        public List<Entry> requests() {
+            return journal.requestsMatchedBy(matcher);
+        }
+
+        private String message() {
+            return matcher.buildExpectedMatchers(new StringBuilder("Number of calls to:\n"))
+                    .append("did NOT match.").toString();
+        }
+    }
+
+    /**
+     * A request kept in the journal.
+     */
+    public static final class Entry {
+
+        private final long sequence;
+        private final long timestamp;
+        private final String requestLine;
+        private final String method;
+        private final String path;
+        private final String fullPath;
+        private final Headers headers;
+        private final BodyRetention.RetainedBody body;
+        private final long bodySize;
+        private final RequestMatchersGroup matcher;
+
+        Entry(long sequence, ParsedRequest request, RequestMatchersGroup matcher, BodyRetention retention) {
+            final RecordedRequest recorded = request.getRequest();
+            this.sequence = sequence;
+            this.timestamp = System.currentTimeMillis();
+            this.requestLine = recorded.getRequestLine();
+            this.method = recorded.getMethod();
+            this.path = request.getPath();
+            this.fullPath = request.getFullPath();
+            this.headers = recorded.getHeaders();
+            this.body = retention.retain(recorded.getBody());
+            this.bodySize = recorded.getBodySize();
+            this.matcher = matcher;
+        }
+
+        /**
+         * Position of the request among all the requests recorded, starting at zero.
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * When the request was recorded, in milliseconds since the epoch.
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getRequestLine() {
+            return requestLine;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        /**
+         * The path without the query string.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * The path with the query string.
+         */
+        public String getFullPath() {
+            return fullPath;
+        }
+
+        public Headers getHeaders() {
+            return headers;
+        }
+
+        /**
+         * The part of the body kept in memory: the whole retained body or the preview of a
+         * spilled one. See {@link #openBody()} to read all of it.
+         */
+        public ByteString getBody() {
+            return body.bytes;
+        }
+
+        public String getBodyUtf8() {
+            return body.bytes.utf8();
+        }
+
+        /**
+         * Opens a source over the retained body. Spilled bodies are streamed from their file.
+         *
+         * @throws IOException if the file of a spilled body can't be opened, for example because
+         *                     the request already left the journal
+         */
+        public BufferedSource openBody() throws IOException {
+
+            if (body.file != null) {
+                return Okio.buffer(Okio.source(body.file));
+            }
+
+            return new Buffer().write(body.bytes);
+        }
+
+        /**
+         * The size of the whole body, even if it was not retained.
+         */
+        public long getBodySize() {
+            return bodySize;
+        }
+
+        /**
+         * Whether part of the body was dropped by the {@link BodyRetention}.
+         */
+        public boolean isBodyTruncated() {
+            return body.file == null && body.bytes.size() < bodySize;
+        }
+
+        /**
+         * Whether the body was written to a file.
+         */
+        public boolean isBodySpilled() {
+            return body.file != null;
+        }
+
+        /**
+         * SHA-256 digest of a spilled body or null if the body was not spilled.
+         */
+        public ByteString getBodyDigest() {
+            return body.digest;
+        }
+
+        /**
+         * The group that served this request or null if none matched.
+         */
+        public RequestMatchersGroup getMatcher() {
+            return matcher;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" + sequence + ": " + requestLine + ", bodySize=" + bodySize + '}';
+        }
+    }
+}
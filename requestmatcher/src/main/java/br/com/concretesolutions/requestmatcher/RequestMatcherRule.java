@@ -4,17 +4,33 @@ import org.junit.rules.TestRule;
 import org.junit.runner.Description;
 import org.junit.runners.model.Statement;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.X509TrustManager;
+
 import br.com.concretesolutions.requestmatcher.exception.RequestAssertionException;
+import br.com.concretesolutions.requestmatcher.model.HttpMethod;
+import okhttp3.Headers;
 import okhttp3.HttpUrl;
+import okhttp3.Protocol;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
 
 import static org.junit.Assert.fail;
 
@@ -43,12 +59,27 @@ import static org.junit.Assert.fail;
  */
 public abstract class RequestMatcherRule implements TestRule {
 
+    private static final Logger logger = Logger.getLogger(RequestMatcherRule.class.getName());
+    private static final int DEFAULT_DIAGNOSTICS_SAMPLE_RATE = 1000;
+    private static final long DEFAULT_RETAINED_BODY_BYTES = 64 * 1024;
+    private static final int UNCHECKED = -1;
+
     private final MatcherDispatcher dispatcher = new MatcherDispatcher();
-    private final MockWebServer server;
+    private final MockWebServerPool pool;
     private final String fixturesRootFolder;
 
     private final Map<String, String> defaultHeaders = new HashMap<>();
     private boolean guessMimeType = true;
+    private boolean logDispatchStats;
+    private int maxConnections = UNCHECKED;
+    private double minConnectionReuseRatio = UNCHECKED;
+    private RequestJournal journal;
+    private RequestTimings timings;
+    private DuplicateDetector duplicateDetector;
+    private boolean failOnDuplicates;
+    private Recorder recorder;
+    private MockWebServer server;
+    private String namespace;
 
     RequestMatcherRule() {
         this(new MockWebServer());
@@ -64,6 +95,12 @@ public abstract class RequestMatcherRule implements TestRule {
 
     RequestMatcherRule(MockWebServer server, String fixturesRootFolder) {
         this.server = server;
+        this.pool = null;
+        this.fixturesRootFolder = fixturesRootFolder;
+    }
+
+    RequestMatcherRule(MockWebServerPool pool, String fixturesRootFolder) {
+        this.pool = pool;
         this.fixturesRootFolder = fixturesRootFolder;
     }
 
@@ -72,7 +109,12 @@ public abstract class RequestMatcherRule implements TestRule {
 
     @Override
     public Statement apply(Statement base, Description description) {
-        return server.apply(requestAssertionStatement(base), description);
+
+        if (pool == null) {
+            return server.apply(requestAssertionStatement(base, description), description);
+        }
+
+        return pooledServerStatement(requestAssertionStatement(base, description));
     }
 
     /**
@@ -87,6 +129,597 @@ public abstract class RequestMatcherRule implements TestRule {
         return this;
     }
 
+    /**
+     * Sets how the routing key of requests is extracted. Groups tagged with
+     * {@link RequestMatchersGroup#routingKeyIs(String)} are indexed by their key and only tried
+     * for requests with the same key. This keeps dispatching fast with thousands of stubs behind
+     * the same path.
+     *
+     * @param extractor The extractor. See {@link RoutingKeys} for common ones.
+     * @return This for chaining
+     */
+    public RequestMatcherRule withRoutingKeyExtractor(RoutingKeyExtractor extractor) {
+        dispatcher.setRoutingKeyExtractor(extractor);
+        return this;
+    }
+
+    /**
+     * Serves HTTPS with a self-signed certificate for localhost. The certificate is generated the
+     * first time it is needed and shared by every rule of the JVM. {@link #url(String)} returns
+     * https URLs and clients must trust the certificate through {@link #getSslSocketFactory()}
+     * and {@link #getTrustManager()}.
+     * <p>
+     * Needs BouncyCastle (<code>org.bouncycastle:bcprov-jdk15on</code>) in the test classpath.
+     *
+     * @return This for chaining
+     * @throws IllegalStateException if the rule uses a {@link MockWebServerPool}
+     */
+    public RequestMatcherRule withHttps() {
+        requireOwnServer("HTTPS");
+        server.useHttps(SelfSignedCertificate.get().serverSocketFactory(), false);
+        return this;
+    }
+
+    /**
+     * Sets the protocols the server negotiates, for instance {@link Protocol#HTTP_2} and
+     * {@link Protocol#HTTP_1_1}. HTTP/2 needs {@link #withHttps()} and is negotiated through ALPN
+     * when the platform supports it. Otherwise the connection falls back to HTTP/1.1.
+     *
+     * @param protocols The protocols in order of preference. Must contain HTTP/1.1
+     * @return This for chaining
+     * @throws IllegalStateException if the rule uses a {@link MockWebServerPool}
+     */
+    public RequestMatcherRule withProtocols(Protocol... protocols) {
+        requireOwnServer("Protocols");
+        server.setProtocols(Arrays.asList(protocols));
+        return this;
+    }
+
+    /**
+     * A socket factory that trusts only the certificate served by {@link #withHttps()}. Use it
+     * with {@link #getTrustManager()} when building the client:
+     * <pre>
+     * new OkHttpClient.Builder()
+     *     .sslSocketFactory(server.getSslSocketFactory(), server.getTrustManager())
+     *     .build();
+     * </pre>
+     */
+    public SSLSocketFactory getSslSocketFactory() {
+        return SelfSignedCertificate.get().clientSocketFactory();
+    }
+
+    /**
+     * The trust manager of {@link #getSslSocketFactory()}.
+     */
+    public X509TrustManager getTrustManager() {
+        return SelfSignedCertificate.get().trustManager();
+    }
+
+    // pooled servers are already started and shared, they can't change how they serve
+    private void requireOwnServer(String option) {
+
+        if (pool != null) {
+            throw new IllegalStateException(option + " can't be set on rules using a pool");
+        }
+    }
+
+    /**
+     * Sets the latency profile of fixtures that don't have their own. See
+     * {@link IfRequestMatches#withLatency(LatencyProfile)}.
+     *
+     * @param latency The profile to apply to every fixture served
+     * @return This for chaining
+     */
+    public RequestMatcherRule withDefaultLatency(LatencyProfile latency) {
+        dispatcher.setDefaultLatency(latency);
+        return this;
+    }
+
+    /**
+     * Sets the fault profile of fixtures that don't have their own. See
+     * {@link IfRequestMatches#withFaults(FaultProfile)}.
+     *
+     * @param faults The profile to draw a fault from for every request matching a fixture
+     * @return This for chaining
+     */
+    public RequestMatcherRule withDefaultFaults(FaultProfile faults) {
+        dispatcher.setDefaultFaults(faults);
+        return this;
+    }
+
+    /**
+     * Number of requests that got a fault of a {@link FaultProfile} instead of their fixture.
+     */
+    public long getInjectedFaultCount() {
+        return dispatcher.getInjectedFaultCount();
+    }
+
+    /**
+     * Turns this rule into a backend for load tests. Every fixture is reusable, successful
+     * dispatches don't build diagnostics or copy the body and only one in every 1000 unmatched
+     * requests is described in the {@link RequestAssertionException}.
+     *
+     * @return This for chaining
+     * @see #withLoadTargetMode(int)
+     */
+    public RequestMatcherRule withLoadTargetMode() {
+        return withLoadTargetMode(DEFAULT_DIAGNOSTICS_SAMPLE_RATE);
+    }
+
+    /**
+     * Same as {@link #withLoadTargetMode()} describing one in every diagnosticsSampleRate
+     * unmatched requests. The first one is always described.
+     *
+     * @param diagnosticsSampleRate How many unmatched requests per described one
+     * @return This for chaining
+     */
+    public RequestMatcherRule withLoadTargetMode(int diagnosticsSampleRate) {
+        dispatcher.setLoadTarget(diagnosticsSampleRate);
+        return this;
+    }
+
+    /**
+     * Records how long matching and dispatching took and how many times each fixture was hit or
+     * evaluated without matching. See {@link #getDispatchStats()}.
+     *
+     * @param logSummary True to log a summary of the stats after the test
+     * @return This for chaining
+     */
+    public RequestMatcherRule withDispatchStats(boolean logSummary) {
+        dispatcher.setRecordingStats(true);
+        logDispatchStats = logSummary;
+        return this;
+    }
+
+    /**
+     * The dispatch stats of this rule. Empty unless enabled with
+     * {@link #withDispatchStats(boolean)}.
+     */
+    public DispatchStats getDispatchStats() {
+        return dispatcher.getStats();
+    }
+
+    /**
+     * How the requests of the test were spread over connections.
+     */
+    public ConnectionStats getConnectionStats() {
+        return dispatcher.getConnectionStats();
+    }
+
+    /**
+     * Fails the test if the client opened more connections than the given number. Checked after
+     * the test.
+     *
+     * @param maxConnections The most connections the client may open
+     * @return This for chaining
+     */
+    public RequestMatcherRule assertMaxConnections(int maxConnections) {
+
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("maxConnections must be at least 1");
+        }
+
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    /**
+     * Fails the test if the client made more than one request and none of them reused a
+     * connection. Checked after the test.
+     *
+     * @return This for chaining
+     * @see #assertConnectionReuse(double)
+     */
+    public RequestMatcherRule assertConnectionReuse() {
+        return assertConnectionReuse(Double.MIN_VALUE);
+    }
+
+    /**
+     * Fails the test if the share of requests sent on an already used connection is below the
+     * given ratio. See {@link ConnectionStats#getReuseRatio()}. Checked after the test.
+     *
+     * @param minReuseRatio A value between 0 and 1
+     * @return This for chaining
+     */
+    public RequestMatcherRule assertConnectionReuse(double minReuseRatio) {
+
+        if (minReuseRatio < 0 || minReuseRatio > 1) {
+            throw new IllegalArgumentException("minReuseRatio must be between 0 and 1");
+        }
+
+        this.minConnectionReuseRatio = minReuseRatio;
+        return this;
+    }
+
+    /**
+     * Fails the test if more than maxRequests requests to the path arrived within any window of
+     * the given length, for instance a retry storm. Checked after the test.
+     *
+     * @param path        The path of the requests, without the query
+     * @param maxRequests The most requests allowed in a window
+     * @param window      The length of the window
+     * @param unit        The unit of the window
+     * @return This for chaining
+     */
+    public RequestMatcherRule assertMaxRequests(String path, int maxRequests, long window,
+                                                TimeUnit unit) {
+
+        if (maxRequests < 1) {
+            throw new IllegalArgumentException("maxRequests must be at least 1");
+        }
+
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+
+        timings().expectMaxRequests(path, maxRequests, unit.toNanos(window));
+        return this;
+    }
+
+    /**
+     * Fails the test if two consecutive requests to the path arrived closer than the given
+     * spacing, for instance retries without backoff. Checked after the test.
+     *
+     * @param path    The path of the requests, without the query
+     * @param spacing The minimum time between two requests
+     * @param unit    The unit of the spacing
+     * @return This for chaining
+     */
+    public RequestMatcherRule assertMinSpacing(String path, long spacing, TimeUnit unit) {
+
+        if (spacing <= 0) {
+            throw new IllegalArgumentException("spacing must be positive");
+        }
+
+        timings().expectMinSpacing(path, unit.toNanos(spacing));
+        return this;
+    }
+
+    /**
+     * Fails the test if the last fixture was served later than the given budget after the test
+     * started. Fixtures that are never served already fail the test. Checked after the test.
+     *
+     * @param budget The time allowed to serve every fixture
+     * @param unit   The unit of the budget
+     * @return This for chaining
+     */
+    public RequestMatcherRule assertAllServedWithin(long budget, TimeUnit unit) {
+
+        if (budget <= 0) {
+            throw new IllegalArgumentException("budget must be positive");
+        }
+
+        timings().expectServedWithin(unit.toNanos(budget));
+        return this;
+    }
+
+    /**
+     * The arrival times of the requests of this test.
+     *
+     * @throws IllegalStateException if no timing assertion was added
+     */
+    public RequestTimings getTimings() {
+
+        if (timings == null) {
+            throw new IllegalStateException("Timings are only recorded with a timing assertion.");
+        }
+
+        return timings;
+    }
+
+    private RequestTimings timings() {
+
+        if (timings == null) {
+            timings = new RequestTimings();
+            dispatcher.setTimings(timings);
+        }
+
+        return timings;
+    }
+
+    /**
+     * Looks for requests sent again within the window with the same method, path, query and
+     * body. See {@link DuplicateDetector}. Duplicates are reported after the test.
+     *
+     * @param window   How long after a request an identical one is a duplicate
+     * @param unit     The unit of the window
+     * @param failTest True to fail the test on duplicates, false to only log a warning
+     * @return This for chaining
+     */
+    public RequestMatcherRule withDuplicateDetection(long window, TimeUnit unit, boolean failTest) {
+        duplicateDetector = new DuplicateDetector(window, unit);
+        failOnDuplicates = failTest;
+        dispatcher.setDuplicateDetector(duplicateDetector);
+        return this;
+    }
+
+    /**
+     * The requests sent more than once within the window, with how many times they were sent.
+     *
+     * @throws IllegalStateException if the detection was not enabled with
+     *                               {@link #withDuplicateDetection(long, TimeUnit, boolean)}
+     */
+    public Map<String, Integer> getDuplicates() {
+
+        if (duplicateDetector == null) {
+            throw new IllegalStateException("Duplicate detection is not enabled. "
+                    + "Call withDuplicateDetection first.");
+        }
+
+        return duplicateDetector.getDuplicates();
+    }
+
+    /**
+     * Keeps the last requests in a {@link RequestJournal} with up to 64 KiB of their bodies.
+     *
+     * @param capacity How many requests to keep
+     * @return This for chaining
+     * @see #withJournal(int, BodyRetention)
+     */
+    public RequestMatcherRule withJournal(int capacity) {
+        return withJournal(capacity, BodyRetention.upTo(DEFAULT_RETAINED_BODY_BYTES));
+    }
+
+    /**
+     * Keeps the last requests in a {@link RequestJournal} to be verified after they are served.
+     * While the journal is on the {@link MockWebServer} does not keep the requests, so
+     * {@link MockWebServer#takeRequest()} should not be used.
+     *
+     * @param capacity  How many requests to keep
+     * @param retention How much of each body to keep
+     * @return This for chaining
+     */
+    public RequestMatcherRule withJournal(int capacity, BodyRetention retention) {
+        journal = new RequestJournal(capacity, retention);
+        dispatcher.setJournal(journal);
+
+        if (server != null) {
+            journal.setServer(server);
+        }
+
+        return this;
+    }
+
+    /**
+     * The journal of this rule.
+     *
+     * @throws IllegalStateException if the journal was not enabled with {@link #withJournal(int)}
+     */
+    public RequestJournal getJournal() {
+
+        if (journal == null) {
+            throw new IllegalStateException("The journal is not enabled. Call withJournal first.");
+        }
+
+        return journal;
+    }
+
+    /**
+     * Starts a verification of the number of requests served by the given group.
+     *
+     * @see #withJournal(int)
+     */
+    public RequestJournal.Verification verify(RequestMatchersGroup matcher) {
+        return getJournal().verify(matcher);
+    }
+
+    /**
+     * The requests to the given path still kept in the journal, oldest first.
+     *
+     * @see #withJournal(int)
+     */
+    public List<RequestJournal.Entry> requestsTo(String path) {
+        return getJournal().requestsTo(path);
+    }
+
+    /**
+     * Proxies the requests that match no fixture to the given upstream server instead of failing
+     * the test. Each response is served to the client and its body written as a fixture into a
+     * folder named after the test inside outputDirectory. After the test a recordings.json index,
+     * to be loaded with {@link #replay(String)}, and a RecordedStubs.java with the equivalent
+     * stubs are written to the same folder.
+     *
+     * @param upstream        The base url requests are sent to. Their path is appended to it.
+     * @param outputDirectory Where the recordings are written
+     * @return This for chaining
+     */
+    public RequestMatcherRule withRecording(HttpUrl upstream, File outputDirectory) {
+        recorder = new Recorder(upstream, outputDirectory);
+        dispatcher.setRecorder(recorder);
+        return this;
+    }
+
+    /**
+     * Adds a fixture for every exchange of a recordings.json index written by
+     * {@link #withRecording(HttpUrl, File)}. Each one matches the recorded method, path and
+     * queries, and the path order when the same request was recorded more than once. Fixture
+     * files are read relative to the index.
+     *
+     * @param indexPath The path of the index inside the fixtures folder
+     * @return The added fixtures, in the recorded order
+     */
+    public List<IfRequestMatches<RequestMatchersGroup>> replay(String indexPath) {
+
+        final List<Recorder.Exchange> exchanges;
+
+        try {
+            final InputStream index = open(fixturesRootFolder + "/" + indexPath);
+
+            if (index == null) {
+                throw new IllegalArgumentException("Could not open recordings " + indexPath);
+            }
+
+            exchanges = Recorder.readIndex(new InputStreamReader(index, Charset.forName("UTF-8")));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read recordings with path " + indexPath, e);
+        }
+
+        final int folderEnd = indexPath.lastIndexOf('/');
+        final String folder = folderEnd == -1 ? "" : indexPath.substring(0, folderEnd + 1);
+        final List<IfRequestMatches<RequestMatchersGroup>> fixtures = new ArrayList<>();
+
+        for (Recorder.Exchange exchange : exchanges) {
+
+            final byte[] body = exchange.fixture != null
+                    ? readBinaryFixture(folder + exchange.fixture)
+                    : new byte[0];
+            final IfRequestMatches<RequestMatchersGroup> fixture =
+                    addResponse(exchange.toResponse(body));
+            final RequestMatchersGroup matcher = fixture.ifRequestMatches()
+                    .methodIs(HttpMethod.valueOf(exchange.method))
+                    .pathIs(exchange.path);
+
+            for (Map.Entry<String, String> query : exchange.queries.entrySet()) {
+                matcher.queriesContain(query.getKey(), query.getValue());
+            }
+
+            if (exchange.pathOrder > 0) {
+                matcher.pathOrderIs(exchange.pathOrder);
+            }
+
+            fixtures.add(fixture);
+        }
+
+        return fixtures;
+    }
+
+    /**
+     * Adds a fixture for every entry of a HAR file, as exported by browsers and proxies. Each one
+     * matches the method, path and queries of the entry, and the path order when the same
+     * request appears more than once. The file is parsed as a stream and the fixtures are added
+     * to the dispatcher in a single batch. Identical response bodies are kept in memory once.
+     * Entries without a response are skipped.
+     *
+     * @param harPath The path of the HAR file inside the fixtures folder
+     * @return The added fixtures, in the order of the entries
+     */
+    public List<IfRequestMatches<RequestMatchersGroup>> importHar(String harPath) {
+
+        final InputStream har;
+
+        try {
+            har = open(fixturesRootFolder + "/" + harPath);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read HAR with path " + harPath, e);
+        }
+
+        if (har == null) {
+            throw new IllegalArgumentException("Could not open HAR " + harPath);
+        }
+
+        return importHar(har, harPath);
+    }
+
+    /**
+     * Same as {@link #importHar(String)} for a HAR file outside the fixtures folder. Captures of
+     * real sessions are often too big to be packaged with the tests.
+     *
+     * @param harFile The HAR file
+     * @return The added fixtures, in the order of the entries
+     */
+    public List<IfRequestMatches<RequestMatchersGroup>> importHar(File harFile) {
+        try {
+            return importHar(new FileInputStream(harFile), harFile.getPath());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read HAR with path " + harFile, e);
+        }
+    }
+
+    private List<IfRequestMatches<RequestMatchersGroup>> importHar(InputStream har, String path) {
+
+        final List<MatcherDispatcher.ResponseWithMatcher> stubs;
+
+        try {
+            stubs = HarImporter.read(new InputStreamReader(har, Charset.forName("UTF-8")));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read HAR with path " + path, e);
+        }
+
+        for (MatcherDispatcher.ResponseWithMatcher stub : stubs) {
+            for (Map.Entry<String, String> header : defaultHeaders.entrySet()) {
+                stub.getResponse().addHeader(header.getKey(), header.getValue());
+            }
+        }
+
+        dispatcher.addStubs(stubs);
+
+        final List<IfRequestMatches<RequestMatchersGroup>> fixtures = new ArrayList<>(stubs.size());
+
+        for (MatcherDispatcher.ResponseWithMatcher stub : stubs) {
+            fixtures.add(new IfRequestMatches<>(stub.getMatcher(), stub));
+        }
+
+        return fixtures;
+    }
+
+    /**
+     * Adds the stubs listed in a JSON manifest. Each stub has the method, path or path template
+     * (like /users/{id}), queries, headers and JSON path values a request must have, and the
+     * fixture, status, headers and consumption ("once", the default, or "reusable") of the
+     * response. Fixture paths are relative to the fixtures folder.
+     * <p>
+     * A manifest is compiled once and reused by every test of the JVM that loads it, so loading
+     * thousands of stubs costs one copy of each response per test.
+     *
+     * @param manifestPath The path of the manifest inside the fixtures folder
+     * @return This for chaining
+     */
+    public RequestMatcherRule loadManifest(String manifestPath) {
+
+        final List<StubManifest.Stub> stubs =
+                StubManifest.load(this, fixturesRootFolder, manifestPath).getStubs();
+        final List<MatcherDispatcher.ResponseWithMatcher> added = new ArrayList<>(stubs.size());
+
+        for (StubManifest.Stub stub : stubs) {
+
+            final MockResponse response = stub.response.clone();
+
+            if (guessMimeType && stub.guessedMimeType != null
+                    && response.getHeaders().get("Content-Type") == null) {
+                response.addHeader("Content-Type", stub.guessedMimeType);
+            }
+
+            for (Map.Entry<String, String> header : defaultHeaders.entrySet()) {
+                response.addHeader(header.getKey(), header.getValue());
+            }
+
+            final MatcherDispatcher.ResponseWithMatcher compiled =
+                    MatcherDispatcher.newStub(response, stub.matcher);
+            compiled.setReusable(stub.reusable);
+            added.add(compiled);
+        }
+
+        dispatcher.addStubs(added);
+        return this;
+    }
+
+    /**
+     * The current state of a scenario.
+     *
+     * @see IfRequestMatches#inScenario(String, String)
+     */
+    public String getScenarioState(String scenario) {
+        return dispatcher.getScenarioState(scenario);
+    }
+
+    /**
+     * Moves a scenario to the given state, for instance to start a test half way through it.
+     *
+     * @return This for chaining
+     */
+    public RequestMatcherRule setScenarioState(String scenario, String state) {
+        dispatcher.setScenarioState(scenario, state);
+        return this;
+    }
+
+    /**
+     * Number of requests that did not match any fixture. In load target mode most of them are
+     * only counted.
+     */
+    public long getUnmatchedCount() {
+        return dispatcher.getUnmatchedCount();
+    }
+
     /**
      * Sets whether it should be tried to guess the proper mime type for the fixture from its file
      * extension.
@@ -106,13 +739,29 @@ public abstract class RequestMatcherRule implements TestRule {
      * @return An OkHttp URL
      */
     public HttpUrl url(String path) {
-        return server.url(path);
+
+        final MockWebServer mockWebServer = getMockWebServer();
+
+        if (namespace == null) {
+            return mockWebServer.url(path);
+        }
+
+        return mockWebServer.url('/' + namespace + (path.startsWith("/") ? path : '/' + path));
     }
 
     /**
-     * Returns the wrapped {@link MockWebServer} instance
+     * Returns the wrapped {@link MockWebServer} instance. When using a {@link MockWebServerPool}
+     * this is the server borrowed for the current test.
      */
     public MockWebServer getMockWebServer() {
+
+        if (server == null) {
+            server = pool.acquire();
+            namespace = pool.newNamespace();
+            // the client may keep connections of the earlier tests on this server
+            dispatcher.getConnectionStats().startOnUsedServer();
+        }
+
         return server;
     }
 
@@ -155,7 +804,7 @@ public abstract class RequestMatcherRule implements TestRule {
      */
     public <T extends RequestMatchersGroup> IfRequestMatches<T> addResponse(MockResponse response,
                                                                             T matcher) {
-        return new IfRequestMatches<>(dispatcher.addFixture(response, matcher));
+        return new IfRequestMatches<>(matcher, dispatcher.addStub(response, matcher));
     }
 
     /**
@@ -165,7 +814,7 @@ public abstract class RequestMatcherRule implements TestRule {
      * @return A dsl instance {@link IfRequestMatches} for chaining
      */
     public IfRequestMatches<RequestMatchersGroup> addResponse(MockResponse response) {
-        return new IfRequestMatches<>(dispatcher.addFixture(response));
+        return addResponse(response, new RequestMatchersGroup());
     }
 
     /**
@@ -238,6 +887,64 @@ public abstract class RequestMatcherRule implements TestRule {
                 .setBody(readFixture(fixturePath)), matcher);
     }
 
+    /**
+     * Adds a fixture whose response is computed for every request it serves. It is matched,
+     * ordered and verified like a static fixture.
+     *
+     * @param generator Computes the response from the request
+     * @return A dsl instance {@link IfRequestMatches} for chaining
+     */
+    public IfRequestMatches<RequestMatchersGroup> respondWith(ResponseGenerator generator) {
+
+        final RequestMatchersGroup matcher = new RequestMatchersGroup();
+        final MatcherDispatcher.ResponseWithMatcher stub =
+                MatcherDispatcher.newStub(new MockResponse(), matcher);
+
+        stub.setGenerator(defaultHeaders.isEmpty() ? generator : withDefaultHeaders(generator));
+        dispatcher.addStubs(Collections.singletonList(stub));
+        return new IfRequestMatches<>(matcher, stub);
+    }
+
+    // the headers are copied so that, like for static fixtures, only those set before count
+    private ResponseGenerator withDefaultHeaders(final ResponseGenerator generator) {
+
+        final Headers headers = Headers.of(defaultHeaders);
+
+        return new ResponseGenerator() {
+            @Override
+            public MockResponse generate(ParsedRequest request) throws IOException {
+
+                final MockResponse response = generator.generate(request);
+
+                for (int i = 0; i < headers.size(); i++) {
+                    response.addHeader(headers.name(i), headers.value(i));
+                }
+
+                return response;
+            }
+        };
+    }
+
+    /**
+     * Adds a fixture with the status and headers of the template and a body written for every
+     * request it serves. The body is written straight into pooled okio segments.
+     *
+     * @param template The status and headers of every response. It is not changed.
+     * @param writer   Writes the body for the request
+     * @return A dsl instance {@link IfRequestMatches} for chaining
+     */
+    public IfRequestMatches<RequestMatchersGroup> respondWith(final MockResponse template,
+                                                              final BodyWriter writer) {
+        return respondWith(new ResponseGenerator() {
+            @Override
+            public MockResponse generate(ParsedRequest request) throws IOException {
+                final Buffer body = new Buffer();
+                writer.write(request, body);
+                return template.clone().setBody(body);
+            }
+        });
+    }
+
     /**
      * Public class that eases the DSL reading of the chain. Sometimes all you want is to add a
      * fixture without a matching. When you DO need to match the request, it is easier to read:
@@ -248,9 +955,74 @@ public abstract class RequestMatcherRule implements TestRule {
     public static class IfRequestMatches<T extends RequestMatchersGroup> {
 
         private final T group;
+        private final MatcherDispatcher.ResponseWithMatcher stub;
 
-        IfRequestMatches(T group) {
+        IfRequestMatches(T group, MatcherDispatcher.ResponseWithMatcher stub) {
             this.group = group;
+            this.stub = stub;
+        }
+
+        /**
+         * Serves this fixture with the delays and bandwidth of the given profile instead of the
+         * rule's default one.
+         *
+         * @param latency The profile to apply every time this fixture is served
+         * @return This for chaining
+         */
+        public IfRequestMatches<T> withLatency(LatencyProfile latency) {
+            stub.setLatency(latency);
+            return this;
+        }
+
+        /**
+         * Injects the faults of the given profile into a share of the requests matching this
+         * fixture instead of the rule's default profile. Requests that get a fault don't consume
+         * the fixture.
+         *
+         * @param faults The profile to draw a fault from every time this fixture matches
+         * @return This for chaining
+         */
+        public IfRequestMatches<T> withFaults(FaultProfile faults) {
+            stub.setFaults(faults);
+            return this;
+        }
+
+        /**
+         * Keeps serving this fixture to every matching request instead of only the first one. The
+         * test still fails if no request matches it.
+         *
+         * @return This for chaining
+         */
+        public IfRequestMatches<T> reusable() {
+            stub.setReusable(true);
+            return this;
+        }
+
+        /**
+         * Makes this fixture eligible only while the scenario is in the given state. Scenarios
+         * start in {@link MatcherDispatcher#SCENARIO_STARTED}. The state is checked before any
+         * matcher runs.
+         *
+         * @param scenario      The name of the scenario
+         * @param requiredState The state the scenario must be in
+         * @return This for chaining
+         */
+        public IfRequestMatches<T> inScenario(String scenario, String requiredState) {
+            stub.setScenario(scenario, requiredState);
+            return this;
+        }
+
+        /**
+         * Moves the scenario of this fixture to a new state when it is served. When concurrent
+         * requests race for the same state only one of them is served by this fixture.
+         *
+         * @param newState The state of the scenario after this fixture is served
+         * @return This for chaining
+         * @throws IllegalStateException if {@link #inScenario(String, String)} was not called
+         */
+        public IfRequestMatches<T> willSetStateTo(String newState) {
+            stub.setNewState(newState);
+            return this;
         }
 
         public T ifRequestMatches() {
@@ -260,6 +1032,16 @@ public abstract class RequestMatcherRule implements TestRule {
 
     private void after(Exception exception, boolean success) throws Exception {
 
+        if (logDispatchStats && logger.isLoggable(Level.INFO)) {
+            logger.info(dispatcher.getStats().summary());
+        }
+
+        final String duplicates = duplicateDetector != null ? duplicateDetector.describe() : null;
+
+        if (duplicates != null && !failOnDuplicates && logger.isLoggable(Level.WARNING)) {
+            logger.warning(duplicates);
+        }
+
         if (dispatcher.getAssertionException() != null) {
 
             // if there was an exception in the test (for example a NPE) we print the
@@ -267,8 +1049,7 @@ public abstract class RequestMatcherRule implements TestRule {
             // This might help debug where the test is failing. We can't simply add it as
             // suppressed as it was added only in API 19.
             if (exception != null) {
-                Logger.getLogger(RequestMatcherRule.class.getName())
-                        .log(Level.SEVERE, "Test threw exception.", exception);
+                logger.log(Level.SEVERE, "Test threw exception.", exception);
             }
 
             throw dispatcher.getAssertionException();
@@ -283,10 +1064,23 @@ public abstract class RequestMatcherRule implements TestRule {
             return;
         }
 
-        if (dispatcher.size() != 0) {
+        verifyConnections();
+        verifyTimings();
+
+        if (duplicates != null && failOnDuplicates) {
+            try {
+                fail(duplicates);
+            } catch (AssertionError e) {
+                throw new RequestAssertionException("Failed assertion.", e);
+            }
+        }
+
+        final List<MatcherDispatcher.ResponseWithMatcher> unusedStubs = dispatcher.getUnusedStubs();
+
+        if (!unusedStubs.isEmpty()) {
             try {
                 final StringBuilder errorHint = new StringBuilder(100);
-                for (MatcherDispatcher.ResponseWithMatcher remainingResponse : dispatcher.getResponseSet()) {
+                for (MatcherDispatcher.ResponseWithMatcher remainingResponse : unusedStubs) {
 
                     final String matcher = remainingResponse.getMatcher().toString();
                     final String response = remainingResponse.getResponse().toString();
@@ -303,13 +1097,77 @@ public abstract class RequestMatcherRule implements TestRule {
         }
     }
 
-    private Statement requestAssertionStatement(final Statement base) {
+    private void verifyConnections() {
+
+        final ConnectionStats connections = dispatcher.getConnectionStats();
+
+        try {
+            if (maxConnections != UNCHECKED && connections.getConnectionCount() > maxConnections) {
+                fail("Expected at most " + maxConnections + " connections but there were "
+                        + connections);
+            }
+
+            // a single request can't reuse a connection
+            if (minConnectionReuseRatio != UNCHECKED && connections.getRequestCount() > 1
+                    && connections.getReuseRatio() < minConnectionReuseRatio) {
+                fail("Expected a connection reuse ratio of at least " + minConnectionReuseRatio
+                        + " but there were " + connections);
+            }
+        } catch (AssertionError e) {
+            throw new RequestAssertionException("Failed assertion.", e);
+        }
+    }
+
+    private void verifyTimings() {
+
+        if (timings == null) {
+            return;
+        }
+
+        final List<String> failures = timings.verify();
+
+        if (failures.isEmpty()) {
+            return;
+        }
+
+        final StringBuilder message = new StringBuilder("Timing assertions failed:");
+
+        for (String failure : failures) {
+            message.append("\n").append(failure);
+        }
+
+        try {
+            fail(message.toString());
+        } catch (AssertionError e) {
+            throw new RequestAssertionException("Failed assertion.", e);
+        }
+    }
+
+    private Statement requestAssertionStatement(final Statement base,
+                                                final Description description) {
 
         return new Statement() {
 
             @Override
             public void evaluate() throws Throwable {
-                server.setDispatcher(dispatcher);
+                if (pool == null) {
+                    server.setDispatcher(dispatcher);
+                } else {
+                    pool.attach(getMockWebServer(), namespace, dispatcher);
+                }
+
+                if (journal != null) {
+                    journal.setServer(getMockWebServer());
+                }
+
+                if (recorder != null) {
+                    recorder.begin(testName(description), testPackage(description));
+                }
+
+                if (timings != null) {
+                    timings.begin();
+                }
+
                 boolean success = false;
                 Exception exception = null;
                 try {
@@ -319,7 +1177,76 @@ public abstract class RequestMatcherRule implements TestRule {
                 } catch (Exception e) {
                     exception = e;
                 } finally {
-                    after(exception, success);
+                    boolean verified = false;
+                    try {
+                        after(exception, success);
+                        verified = true;
+                    } finally {
+                        try {
+                            finishRecording(verified);
+                        } finally {
+                            if (journal != null) {
+                                journal.discardSpilledBodies();
+                            }
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    private void finishRecording(boolean verified) throws IOException {
+
+        if (recorder == null) {
+            return;
+        }
+
+        try {
+            recorder.finish();
+        } catch (IOException e) {
+
+            if (verified) {
+                throw e;
+            }
+
+            // the test already failed. Its failure is thrown instead, see after()
+            logger.log(Level.SEVERE, "Could not write the recordings.", e);
+        }
+    }
+
+    private static String testPackage(Description description) {
+
+        final String className = description.getClassName();
+        final int lastDot = className.lastIndexOf('.');
+        return lastDot != -1 ? className.substring(0, lastDot) : "";
+    }
+
+    private static String testName(Description description) {
+
+        final String className = description.getClassName();
+        final String simpleName = className.substring(className.lastIndexOf('.') + 1);
+        final String methodName = description.getMethodName();
+        return methodName != null ? simpleName + '_' + methodName : simpleName;
+    }
+
+    private Statement pooledServerStatement(final Statement base) {
+
+        return new Statement() {
+
+            @Override
+            public void evaluate() throws Throwable {
+                try {
+                    base.evaluate();
+                } finally {
+                    if (journal != null) {
+                        journal.setServer(null);
+                    }
+
+                    if (server != null) {
+                        pool.release(server, namespace);
+                        server = null;
+                        namespace = null;
+                    }
                 }
             }
         };
@@ -4,16 +4,29 @@ import android.support.annotation.NonNull;
 
 import org.hamcrest.Matcher;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import br.com.concretesolutions.requestmatcher.matchers.IsMapContainingEntries;
+import br.com.concretesolutions.requestmatcher.matchers.JsonPathPredicates;
+import br.com.concretesolutions.requestmatcher.model.GraphQlOperation;
 import br.com.concretesolutions.requestmatcher.model.HttpMethod;
+import br.com.concretesolutions.requestmatcher.model.Multipart;
 import okhttp3.mockwebserver.RecordedRequest;
 
+import static br.com.concretesolutions.requestmatcher.matchers.GraphQlMatchers.operationName;
+import static br.com.concretesolutions.requestmatcher.matchers.GraphQlMatchers.operationType;
+import static br.com.concretesolutions.requestmatcher.matchers.GraphQlMatchers.variables;
 import static br.com.concretesolutions.requestmatcher.matchers.IsMapWithSize.anEmptyMap;
+import static br.com.concretesolutions.requestmatcher.matchers.MultipartMatchers.hasPart;
+import static br.com.concretesolutions.requestmatcher.matchers.MultipartMatchers.hasPartCount;
+import static br.com.concretesolutions.requestmatcher.matchers.MultipartMatchers.partBody;
+import static br.com.concretesolutions.requestmatcher.matchers.MultipartMatchers.partContentType;
+import static br.com.concretesolutions.requestmatcher.matchers.MultipartMatchers.partFilename;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.allOf;
-import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.anything;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.isEmptyOrNullString;
 
@@ -29,58 +42,170 @@ public class RequestMatchersGroup {
     public static final String BODY_MSG = "BODY did NOT match.";
     public static final String JSON_MSG = "JSON BODY did NOT match.";
     public static final String ORDER_MSG = "REQUEST ORDER did NOT match.";
-
+    public static final String ROUTING_KEY_MSG = "ROUTING KEY did NOT match.";
+    public static final String GRAPHQL_MSG = "GRAPHQL OPERATION did NOT match.";
+    public static final String FORM_MSG = "FORM BODY did NOT match.";
+    public static final String FLOW_ORDER_MSG = "REQUEST ORDER IN FLOW did NOT match.";
+    public static final String MULTIPART_MSG = "MULTIPART BODY did NOT match.";
+
+    private static final ConcurrentMap<Class<?>, Boolean> DO_ASSERT_OVERRIDES =
+            new ConcurrentHashMap<>();
+
+    private String routingKey;
+    // bumped when a key the dispatcher indexes this group by is set
+    private volatile int indexVersion;
+    private Matcher<String> routingKeyMatcher;
     private Matcher<String> bodyMatcher;
     private Matcher<String> pathMatcher;
+    private String exactPath;
     private Matcher<HttpMethod> methodMatcher;
     private Matcher<Integer> orderMatcher;
+    private Matcher<Integer> pathOrderMatcher;
+    private Matcher<Integer> routingKeyOrderMatcher;
+    private Matcher<Integer> flowOrderMatcher;
+    private String flow;
     private Matcher<Map<? extends String, ? extends String>> queryMatcher;
     private Matcher<Map<? extends String, ? extends String>> headersMatcher;
     private Matcher<Object> jsonMatcher;
+    private IsMapContainingEntries queryEntries;
+    private IsMapContainingEntries headerEntries;
+    private IsMapContainingEntries formEntries;
+    private Matcher<Map<? extends String, ? extends String>> formMatcher;
+    private Matcher<Multipart> multipartMatcher;
+    private Matcher<GraphQlOperation> graphQlMatcher;
+    private String graphQlOperationName;
+    private JsonPathPredicates graphQlVariables;
+    private JsonPathPredicates jsonPathPredicates;
 
     /**
      * Main assert method called in the {@link okhttp3.mockwebserver.MockWebServer} dispatching.
      */
     public void doAssert(@NonNull final RecordedRequest request, final int currentOrder) {
+        evaluate(ParsedRequest.of(request), currentOrder, true);
+    }
 
-        if (methodMatcher != null) {
-            assertThat(METHOD_MSG, HttpMethod.forRequest(request), methodMatcher);
+    /**
+     * Same as {@link #doAssert(RecordedRequest, int)} but returns false on the first mismatch
+     * instead of building an {@link AssertionError}. The dispatcher uses it to try candidates
+     * and only calls doAssert to describe why a request did not match. Subclasses overriding
+     * doAssert are matched through it.
+     */
+    boolean matches(@NonNull final RecordedRequest request, final int currentOrder) {
+
+        if (getClass() != RequestMatchersGroup.class && overridesDoAssert(getClass())) {
+            try {
+                doAssert(request, currentOrder);
+                return true;
+            } catch (AssertionError e) {
+                return false;
+            }
         }
 
-        if (pathMatcher != null) {
-            assertThat(PATH_MSG, RequestUtils.getPathOnly(request), pathMatcher);
-        }
+        return evaluate(ParsedRequest.of(request), currentOrder, false);
+    }
 
-        final String path = request.getPath();
+    private static boolean overridesDoAssert(Class<?> type) {
 
-        if (queryMatcher != null) {
+        Boolean overrides = DO_ASSERT_OVERRIDES.get(type);
 
-            if (!path.contains("?")) {
-                assertThat(QUERIES_MSG, new HashMap<String, String>(0), queryMatcher);
-            } else {
-                assertThat(QUERIES_MSG, RequestUtils.buildQueryMap(path), queryMatcher);
+        if (overrides == null) {
+            try {
+                overrides = type.getMethod("doAssert", RecordedRequest.class, int.class)
+                        .getDeclaringClass() != RequestMatchersGroup.class;
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
             }
+            DO_ASSERT_OVERRIDES.put(type, overrides);
         }
 
-        if (headersMatcher != null) {
-            assertThat(HEADERS_MSG,
-                    RequestUtils.buildHeadersMap(request.getHeaders()), headersMatcher);
+        return overrides;
+    }
+
+    private boolean evaluate(ParsedRequest parsedRequest, int currentOrder, boolean assertion) {
+
+        if (routingKeyMatcher != null
+                && !check(ROUTING_KEY_MSG, parsedRequest.getRoutingKey(), routingKeyMatcher, assertion)) {
+            return false;
         }
 
-        // clone the body! perhaps we need the request body for a future assertion.
-        final String body = request.getBody().clone().readUtf8();
+        if (methodMatcher != null
+                && !check(METHOD_MSG, parsedRequest.getMethod(), methodMatcher, assertion)) {
+            return false;
+        }
 
-        if (bodyMatcher != null) {
-            assertThat(BODY_MSG, body, bodyMatcher);
+        if (pathMatcher != null
+                && !check(PATH_MSG, parsedRequest.getPath(), pathMatcher, assertion)) {
+            return false;
         }
 
-        if (jsonMatcher != null) {
-            assertThat(JSON_MSG, body, jsonMatcher);
+        if (queryMatcher != null
+                && !check(QUERIES_MSG, parsedRequest.getQueries(), queryMatcher, assertion)) {
+            return false;
         }
 
-        if (orderMatcher != null) {
-            assertThat(ORDER_MSG, currentOrder, orderMatcher);
+        if (headersMatcher != null
+                && !check(HEADERS_MSG, parsedRequest.getHeaders(), headersMatcher, assertion)) {
+            return false;
+        }
+
+        if (bodyMatcher != null
+                && !check(BODY_MSG, parsedRequest.getBodyUtf8(), bodyMatcher, assertion)) {
+            return false;
+        }
+
+        if (jsonMatcher != null
+                && !check(JSON_MSG, parsedRequest.getBodyUtf8(), jsonMatcher, assertion)) {
+            return false;
+        }
+
+        if (jsonPathPredicates != null
+                && !check(JSON_MSG, parsedRequest.getJsonDocument(), jsonPathPredicates, assertion)) {
+            return false;
+        }
+
+        if (graphQlMatcher != null
+                && !check(GRAPHQL_MSG, parsedRequest.getGraphQlOperation(), graphQlMatcher, assertion)) {
+            return false;
+        }
+
+        if (formMatcher != null
+                && !check(FORM_MSG, parsedRequest.getForm(), formMatcher, assertion)) {
+            return false;
+        }
+
+        if (multipartMatcher != null
+                && !check(MULTIPART_MSG, parsedRequest.getMultipart(), multipartMatcher, assertion)) {
+            return false;
+        }
+
+        if (orderMatcher != null
+                && !check(ORDER_MSG, currentOrder, orderMatcher, assertion)) {
+            return false;
+        }
+
+        if (pathOrderMatcher != null
+                && !check(FLOW_ORDER_MSG, parsedRequest.getPathOrder(), pathOrderMatcher, assertion)) {
+            return false;
+        }
+
+        if (routingKeyOrderMatcher != null && !check(FLOW_ORDER_MSG,
+                parsedRequest.getRoutingKeyOrder(), routingKeyOrderMatcher, assertion)) {
+            return false;
         }
+
+        return flowOrderMatcher == null
+                || check(FLOW_ORDER_MSG, parsedRequest.getFlowOrder(flow), flowOrderMatcher, assertion);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean check(String reason, Object actual, Matcher<?> matcher, boolean assertion) {
+
+        if (assertion) {
+            assertThat(reason, actual, (Matcher<Object>) matcher);
+            return true;
+        }
+
+        return matcher.matches(actual);
     }
 
     public RequestMatchersGroup hasEmptyBody() {
@@ -95,9 +220,43 @@ public class RequestMatchersGroup {
         return this;
     }
 
+    /**
+     * Tags this group with a routing key. When the rule has a {@link RoutingKeyExtractor} the
+     * dispatcher only tries this group for requests with the same key.
+     */
+    public RequestMatchersGroup routingKeyIs(String routingKey) {
+        checkIsNull(this.routingKey, "Routing key is already set");
+        this.routingKey = routingKey;
+        this.routingKeyMatcher = is(routingKey);
+        indexVersion++;
+        return this;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    /**
+     * Changes every time a key the dispatcher indexes this group by is set: the routing key, the
+     * path or the GraphQL operation name.
+     */
+    int getIndexVersion() {
+        return indexVersion;
+    }
+
+    /**
+     * The path set with {@link #pathIs(String)} if the dispatcher can rely on it to skip this
+     * group for other paths. Groups overriding doAssert may ignore it.
+     */
+    String getIndexablePath() {
+        return exactPath != null && !overridesDoAssert(getClass()) ? exactPath : null;
+    }
+
     public RequestMatchersGroup pathIs(String path) {
         checkIsNull(pathMatcher, "Path assertion is already set");
         pathMatcher = is(path);
+        exactPath = path;
+        indexVersion++;
         return this;
     }
 
@@ -113,17 +272,56 @@ public class RequestMatchersGroup {
         return this;
     }
 
+    /**
+     * Expects this to be the nth request to its path. Requests to other paths do not count.
+     */
+    public RequestMatchersGroup pathOrderIs(int order) {
+        checkIsNull(pathOrderMatcher, "Path order assertion is already set");
+        pathOrderMatcher = is(order);
+        return this;
+    }
+
+    /**
+     * Expects this to be the nth request with its routing key. Requests with other keys do not
+     * count.
+     */
+    public RequestMatchersGroup routingKeyOrderIs(int order) {
+        checkIsNull(routingKeyOrderMatcher, "Routing key order assertion is already set");
+        routingKeyOrderMatcher = is(order);
+        return this;
+    }
+
+    /**
+     * Puts this group in a flow and expects it to serve the nth request served by the groups of
+     * that flow. Requests served by groups outside the flow do not count, so unrelated concurrent
+     * requests can't break the order.
+     */
+    public RequestMatchersGroup flowOrderIs(String flow, int order) {
+        checkIsNull(flowOrderMatcher, "Flow order assertion is already set");
+        this.flow = flow;
+        flowOrderMatcher = is(order);
+        return this;
+    }
+
+    public String getFlow() {
+        return flow;
+    }
+
     public RequestMatchersGroup queriesContain(String queryKey, String queryValue) {
-        queryMatcher = queryMatcher != null
-                ? allOf(hasEntry(queryKey, queryValue), queryMatcher)
-                : hasEntry(queryKey, queryValue);
+        if (queryEntries == null) {
+            queryEntries = new IsMapContainingEntries();
+            queryMatcher = queryMatcher != null ? allOf(queryEntries, queryMatcher) : queryEntries;
+        }
+        queryEntries.put(queryKey, queryValue);
         return this;
     }
 
     public RequestMatchersGroup headersContain(String headerKey, String headerValue) {
-        headersMatcher = headersMatcher != null
-                ? allOf(hasEntry(headerKey, headerValue), headersMatcher)
-                : hasEntry(headerKey, headerValue);
+        if (headerEntries == null) {
+            headerEntries = new IsMapContainingEntries();
+            headersMatcher = headersMatcher != null ? allOf(headerEntries, headersMatcher) : headerEntries;
+        }
+        headerEntries.put(headerKey, headerValue);
         return this;
     }
 
@@ -167,6 +365,112 @@ public class RequestMatchersGroup {
         return this;
     }
 
+    /**
+     * Expects a GraphQL operation with the given name. The dispatcher indexes groups by their
+     * operation name so only the groups of the request's operation are tried.
+     */
+    public RequestMatchersGroup graphQlOperationNameIs(String name) {
+        checkIsNull(graphQlOperationName, "GraphQL operation name assertion is already set");
+        graphQlOperationName = name;
+        indexVersion++;
+        return graphQlMatches(operationName(is(name)));
+    }
+
+    public String getGraphQlOperationName() {
+        return graphQlOperationName;
+    }
+
+    public RequestMatchersGroup graphQlOperationTypeIs(GraphQlOperation.Type type) {
+        return graphQlMatches(operationType(is(type)));
+    }
+
+    /**
+     * Adds a predicate on the value at the given JSON path of the operation's variables.
+     */
+    public RequestMatchersGroup graphQlVariableMatches(String path, Matcher<?> valueMatcher) {
+        if (graphQlVariables == null) {
+            graphQlVariables = new JsonPathPredicates();
+            graphQlMatches(variables(graphQlVariables));
+        }
+        graphQlVariables.add(path, valueMatcher);
+        return this;
+    }
+
+    public RequestMatchersGroup graphQlVariableIs(String path, Object value) {
+        return graphQlVariableMatches(path, is(value));
+    }
+
+    public RequestMatchersGroup graphQlMatches(Matcher<GraphQlOperation> graphQlMatcher) {
+        this.graphQlMatcher = this.graphQlMatcher != null
+                ? allOf(graphQlMatcher, this.graphQlMatcher)
+                : graphQlMatcher;
+        return this;
+    }
+
+    public RequestMatchersGroup formContains(String formKey, String formValue) {
+        if (formEntries == null) {
+            formEntries = new IsMapContainingEntries();
+            formMatcher = formMatcher != null ? allOf(formEntries, formMatcher) : formEntries;
+        }
+        formEntries.put(formKey, formValue);
+        return this;
+    }
+
+    public RequestMatchersGroup formMatches(Matcher<Map<? extends String, ? extends String>> formMatcher) {
+        this.formMatcher = this.formMatcher != null
+                ? allOf(formMatcher, this.formMatcher)
+                : formMatcher;
+        return this;
+    }
+
+    /**
+     * Adds a predicate on the value at the given JSON path of the body. The expression is compiled
+     * once per JVM and all predicates of this group are answered by a single walk over a document
+     * parsed once per request.
+     */
+    public RequestMatchersGroup jsonPathMatches(String path, Matcher<?> valueMatcher) {
+        if (jsonPathPredicates == null) {
+            jsonPathPredicates = new JsonPathPredicates();
+        }
+        jsonPathPredicates.add(path, valueMatcher);
+        return this;
+    }
+
+    public RequestMatchersGroup jsonPathIs(String path, Object value) {
+        return jsonPathMatches(path, is(value));
+    }
+
+    public RequestMatchersGroup jsonPathExists(String path) {
+        return jsonPathMatches(path, anything());
+    }
+
+    public RequestMatchersGroup multipartMatches(Matcher<Multipart> multipartMatcher) {
+        this.multipartMatcher = this.multipartMatcher != null
+                ? allOf(multipartMatcher, this.multipartMatcher)
+                : multipartMatcher;
+        return this;
+    }
+
+    public RequestMatchersGroup partsCountIs(int count) {
+        return multipartMatches(hasPartCount(is(count)));
+    }
+
+    public RequestMatchersGroup hasPartNamed(String name) {
+        return multipartMatches(hasPart(name, anything()));
+    }
+
+    public RequestMatchersGroup partFilenameIs(String name, String filename) {
+        return multipartMatches(hasPart(name, partFilename(is(filename))));
+    }
+
+    public RequestMatchersGroup partContentTypeIs(String name, String contentType) {
+        return multipartMatches(hasPart(name, partContentType(is(contentType))));
+    }
+
+    public RequestMatchersGroup partBodyMatches(String name, Matcher<String> bodyMatcher) {
+        return multipartMatches(hasPart(name, partBody(bodyMatcher)));
+    }
+
     private void checkIsNull(Object target, String message) {
         if (target != null) {
             throw new IllegalStateException(message);
@@ -177,6 +481,10 @@ public class RequestMatchersGroup {
 
         sb.append("Request matchers group:\n");
 
+        if (routingKey != null) {
+            sb.append(" - routing key: ").append(routingKey).append('\n');
+        }
+
         if (methodMatcher != null) {
             sb.append(" - method: ").append(methodMatcher).append('\n');
         }
@@ -201,22 +509,60 @@ public class RequestMatchersGroup {
             sb.append(" - JSON body: ").append(jsonMatcher).append('\n');
         }
 
+        if (jsonPathPredicates != null) {
+            sb.append(" - JSON paths: ").append(jsonPathPredicates).append('\n');
+        }
+
+        if (graphQlMatcher != null) {
+            sb.append(" - GraphQL operation: ").append(graphQlMatcher).append('\n');
+        }
+
+        if (formMatcher != null) {
+            sb.append(" - form: ").append(formMatcher).append('\n');
+        }
+
+        if (multipartMatcher != null) {
+            sb.append(" - multipart body: ").append(multipartMatcher).append('\n');
+        }
+
         if (orderMatcher != null) {
             sb.append(" - request order: ").append(orderMatcher).append('\n');
         }
 
+        if (pathOrderMatcher != null) {
+            sb.append(" - request order in path: ").append(pathOrderMatcher).append('\n');
+        }
+
+        if (routingKeyOrderMatcher != null) {
+            sb.append(" - request order in routing key: ").append(routingKeyOrderMatcher).append('\n');
+        }
+
+        if (flowOrderMatcher != null) {
+            sb.append(" - request order in flow ").append(flow).append(": ")
+                    .append(flowOrderMatcher).append('\n');
+        }
+
         return sb;
     }
 
     @Override
     public String toString() {
-        return new StringBuilder("RequestMatchersGroup{bodyMatcher=").append(bodyMatcher)
+        return new StringBuilder("RequestMatchersGroup{routingKey=").append(routingKey)
+                .append(", bodyMatcher=").append(bodyMatcher)
                 .append(", pathMatcher=").append(pathMatcher)
                 .append(", methodMatcher=").append(methodMatcher)
                 .append(", orderMatcher=").append(orderMatcher)
+                .append(", pathOrderMatcher=").append(pathOrderMatcher)
+                .append(", routingKeyOrderMatcher=").append(routingKeyOrderMatcher)
+                .append(", flow=").append(flow)
+                .append(", flowOrderMatcher=").append(flowOrderMatcher)
                 .append(", queryMatcher=").append(queryMatcher)
                 .append(", headersMatcher=").append(headersMatcher)
                 .append(", jsonMatcher=").append(jsonMatcher)
+                .append(", jsonPathPredicates=").append(jsonPathPredicates)
+                .append(", graphQlMatcher=").append(graphQlMatcher)
+                .append(", formMatcher=").append(formMatcher)
+                .append(", multipartMatcher=").append(multipartMatcher)
                 .append('}').toString();
     }
 }
@@ -0,0 +1,250 @@
+package br.com.concretesolutions.requestmatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The arrival times of the requests of a test, per path, and the expectations a
+ * {@link RequestMatcherRule} checks against them after the test: how many requests a path may
+ * get within a window, how far apart they must be and how long serving every fixture may take.
+ * Catches retry storms, missing backoff and chatty clients that a match alone can't.
+ * <p>
+ * Times are taken with {@link System#nanoTime()} when the dispatcher receives a request and only
+ * while the rule has a timing expectation.
+ */
+public final class RequestTimings {
+
+    private static final long NOT_SERVED = Long.MIN_VALUE;
+
+    private final ConcurrentMap<String, Queue<Long>> arrivals = new ConcurrentHashMap<>();
+    private final AtomicLong lastServedNanos = new AtomicLong(NOT_SERVED);
+    private final List<Expectation> expectations = new ArrayList<>();
+
+    private volatile long startNanos = System.nanoTime();
+
+    RequestTimings() {
+    }
+
+    /**
+     * Restarts the clock. Called when the test starts.
+     */
+    void begin() {
+        arrivals.clear();
+        lastServedNanos.set(NOT_SERVED);
+        startNanos = System.nanoTime();
+    }
+
+    void arrived(String path, long nanos) {
+
+        Queue<Long> times = arrivals.get(path);
+
+        if (times == null) {
+            final Queue<Long> newTimes = new ConcurrentLinkedQueue<>();
+            times = arrivals.putIfAbsent(path, newTimes);
+
+            if (times == null) {
+                times = newTimes;
+            }
+        }
+
+        times.add(nanos);
+    }
+
+    void served(long nanos) {
+
+        long last;
+
+        while (nanos > (last = lastServedNanos.get())) {
+            if (lastServedNanos.compareAndSet(last, nanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * When the requests to the given path arrived, in the given unit since the start of the test
+     * and in order.
+     */
+    public List<Long> getArrivals(String path, TimeUnit unit) {
+
+        final long[] times = sortedArrivals(path);
+        final List<Long> converted = new ArrayList<>(times.length);
+
+        for (long time : times) {
+            converted.add(unit.convert(time - startNanos, TimeUnit.NANOSECONDS));
+        }
+
+        return converted;
+    }
+
+    void expectMaxRequests(String path, int maxRequests, long windowNanos) {
+        expectations.add(new MaxRequests(path, maxRequests, windowNanos));
+    }
+
+    void expectMinSpacing(String path, long spacingNanos) {
+        expectations.add(new MinSpacing(path, spacingNanos));
+    }
+
+    void expectServedWithin(long budgetNanos) {
+        expectations.add(new ServedWithin(budgetNanos));
+    }
+
+    /**
+     * Describes every expectation that was not met, or returns an empty list.
+     */
+    List<String> verify() {
+
+        final List<String> failures = new ArrayList<>();
+
+        for (Expectation expectation : expectations) {
+
+            final String failure = expectation.verify(this);
+
+            if (failure != null) {
+                failures.add(failure);
+            }
+        }
+
+        return failures;
+    }
+
+    // concurrent requests may be added slightly out of order
+    private long[] sortedArrivals(String path) {
+
+        final Queue<Long> times = arrivals.get(path);
+
+        if (times == null) {
+            return new long[0];
+        }
+
+        final List<Long> copy = new ArrayList<>(times);
+        final long[] sorted = new long[copy.size()];
+
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = copy.get(i);
+        }
+
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private long millisSinceStart(long nanos) {
+        return millis(nanos - startNanos);
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public String toString() {
+
+        final StringBuilder builder = new StringBuilder("RequestTimings{");
+
+        for (String path : arrivals.keySet()) {
+            builder.append(path).append('=').append(getArrivals(path, TimeUnit.MILLISECONDS))
+                    .append("ms, ");
+        }
+
+        return builder.append("expectations=").append(expectations.size()).append('}').toString();
+    }
+
+    private abstract static class Expectation {
+        abstract String verify(RequestTimings timings);
+    }
+
+    private static final class MaxRequests extends Expectation {
+
+        private final String path;
+        private final int maxRequests;
+        private final long windowNanos;
+
+        MaxRequests(String path, int maxRequests, long windowNanos) {
+            this.path = path;
+            this.maxRequests = maxRequests;
+            this.windowNanos = windowNanos;
+        }
+
+        @Override
+        String verify(RequestTimings timings) {
+
+            final long[] times = timings.sortedArrivals(path);
+            int first = 0;
+
+            // slides a window over the arrivals looking for one with too many requests
+            for (int last = 0; last < times.length; last++) {
+
+                while (times[last] - times[first] >= windowNanos) {
+                    first++;
+                }
+
+                if (last - first + 1 > maxRequests) {
+                    return "Expected at most " + maxRequests + " requests to " + path
+                            + " within " + millis(windowNanos) + "ms but " + (last - first + 1)
+                            + " arrived between " + timings.millisSinceStart(times[first])
+                            + "ms and " + timings.millisSinceStart(times[last]) + "ms";
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private static final class MinSpacing extends Expectation {
+
+        private final String path;
+        private final long spacingNanos;
+
+        MinSpacing(String path, long spacingNanos) {
+            this.path = path;
+            this.spacingNanos = spacingNanos;
+        }
+
+        @Override
+        String verify(RequestTimings timings) {
+
+            final long[] times = timings.sortedArrivals(path);
+
+            for (int i = 1; i < times.length; i++) {
+
+                if (times[i] - times[i - 1] < spacingNanos) {
+                    return "Expected requests to " + path + " at least " + millis(spacingNanos)
+                            + "ms apart but requests " + i + " and " + (i + 1) + " arrived "
+                            + millis(times[i] - times[i - 1]) + "ms apart";
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private static final class ServedWithin extends Expectation {
+
+        private final long budgetNanos;
+
+        ServedWithin(long budgetNanos) {
+            this.budgetNanos = budgetNanos;
+        }
+
+        @Override
+        String verify(RequestTimings timings) {
+
+            final long lastServed = timings.lastServedNanos.get();
+
+            if (lastServed != NOT_SERVED && lastServed - timings.startNanos > budgetNanos) {
+                return "Expected every fixture to be served within " + millis(budgetNanos)
+                        + "ms but the last one was served after "
+                        + timings.millisSinceStart(lastServed) + "ms";
+            }
+
+            return null;
+        }
+    }
+}
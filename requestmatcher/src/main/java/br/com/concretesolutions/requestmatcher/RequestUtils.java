@@ -1,11 +1,14 @@
 package br.com.concretesolutions.requestmatcher;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import okhttp3.Headers;
 import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
 
 /**
  * Utility class for preparing parameters to be matched against.
@@ -66,4 +69,86 @@ public final class RequestUtils {
 
         return path.substring(0, path.indexOf('?'));
     }
+
+    /**
+     * Decodes an application/x-www-form-urlencoded body in a single pass over its bytes. Keys
+     * that appear more than once have their values joined with ';' just like headers. The body is
+     * not consumed. A body with a malformed percent encoding is not a form and gives an empty map.
+     */
+    public static Map<String, String> buildFormMap(Buffer body) {
+
+        final Map<String, String> form = new LinkedHashMap<>();
+        final Buffer source = body.clone();
+        final Buffer token = new Buffer();
+
+        String key = null;
+
+        while (!source.exhausted()) {
+
+            final byte b = source.readByte();
+
+            switch (b) {
+                case '&':
+                    putFormEntry(form, key, token);
+                    key = null;
+                    break;
+                case '=':
+                    if (key == null) {
+                        key = token.readUtf8();
+                    } else {
+                        token.writeByte(b);
+                    }
+                    break;
+                case '+':
+                    token.writeByte(' ');
+                    break;
+                case '%':
+                    final int high = source.size() >= 2 ? hexValue(source.readByte()) : -1;
+                    final int low = high != -1 ? hexValue(source.readByte()) : -1;
+
+                    if (low == -1) {
+                        return Collections.emptyMap();
+                    }
+
+                    token.writeByte(high << 4 | low);
+                    break;
+                default:
+                    token.writeByte(b);
+                    break;
+            }
+        }
+
+        putFormEntry(form, key, token);
+        return form;
+    }
+
+    private static void putFormEntry(Map<String, String> form, String key, Buffer token) {
+
+        final String name = key != null ? key : token.readUtf8();
+        final String value = key != null ? token.readUtf8() : "";
+
+        if (name.isEmpty()) {
+            return;
+        }
+
+        final String previous = form.get(name);
+        form.put(name, previous == null ? value : previous + ';' + value);
+    }
+
+    private static int hexValue(byte digit) {
+
+        if (digit >= '0' && digit <= '9') {
+            return digit - '0';
+        }
+
+        if (digit >= 'a' && digit <= 'f') {
+            return digit - 'a' + 10;
+        }
+
+        if (digit >= 'A' && digit <= 'F') {
+            return digit - 'A' + 10;
+        }
+
+        return -1;
+    }
 }
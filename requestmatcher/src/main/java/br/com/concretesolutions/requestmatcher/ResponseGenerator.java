@@ -0,0 +1,27 @@
+package br.com.concretesolutions.requestmatcher;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+import okhttp3.mockwebserver.MockResponse;
+
+/**
+ * Computes the response of a fixture for each request it serves, instead of serving the same
+ * static response every time. The fixture is still matched, ordered and verified like any other.
+ * <p>
+ * Register it with {@link RequestMatcherRule#respondWith(ResponseGenerator)}. Generators may be
+ * called concurrently by the server threads.
+ *
+ * @see BodyWriter
+ */
+public interface ResponseGenerator {
+
+    /**
+     * @param request The request being served
+     * @return The response to serve. A new instance for every call.
+     * @throws IOException to fail the test with the error
+     */
+    @NonNull
+    MockResponse generate(@NonNull ParsedRequest request) throws IOException;
+}
@@ -0,0 +1,21 @@
+package br.com.concretesolutions.requestmatcher;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Extracts the routing key of a request. The dispatcher hashes requests by this key straight to
+ * the stubs tagged with it (see {@link RequestMatchersGroup#routingKeyIs(String)}) before running
+ * any matcher.
+ * <p>
+ * Common extractors are available in {@link RoutingKeys}.
+ */
+public interface RoutingKeyExtractor {
+
+    /**
+     * @param request The request being dispatched
+     * @return The routing key or null if the request has none
+     */
+    @Nullable
+    String extract(@NonNull ParsedRequest request);
+}
@@ -0,0 +1,59 @@
+package br.com.concretesolutions.requestmatcher;
+
+import android.support.annotation.NonNull;
+
+import java.util.Map;
+
+/**
+ * Factories for common {@link RoutingKeyExtractor}s.
+ */
+public final class RoutingKeys {
+
+    /**
+     * Routes by the value of a header. The header name is case insensitive.
+     */
+    public static RoutingKeyExtractor header(final String name) {
+        return new RoutingKeyExtractor() {
+            @Override
+            public String extract(@NonNull ParsedRequest request) {
+                return request.getRequest().getHeader(name);
+            }
+        };
+    }
+
+    /**
+     * Routes by the value of a query parameter.
+     */
+    public static RoutingKeyExtractor query(final String name) {
+        return new RoutingKeyExtractor() {
+            @Override
+            public String extract(@NonNull ParsedRequest request) {
+                return request.getQueries().get(name);
+            }
+        };
+    }
+
+    /**
+     * Routes by the value of a top level field of a JSON body. Requires the optional JSON path
+     * dependency.
+     */
+    public static RoutingKeyExtractor jsonField(final String name) {
+        return new RoutingKeyExtractor() {
+            @Override
+            public String extract(@NonNull ParsedRequest request) {
+
+                final Object document = request.getJsonDocument();
+
+                if (!(document instanceof Map)) {
+                    return null;
+                }
+
+                final Object value = ((Map<?, ?>) document).get(name);
+                return value != null ? value.toString() : null;
+            }
+        };
+    }
+
+    private RoutingKeys() {
+    }
+}
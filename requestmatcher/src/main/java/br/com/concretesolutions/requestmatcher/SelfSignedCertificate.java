@@ -0,0 +1,154 @@
+package br.com.concretesolutions.requestmatcher;
+
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.x509.X509V3CertificateGenerator;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * A certificate for localhost generated on first use and shared by every HTTPS rule of the JVM.
+ * Generating the RSA key takes a noticeable time, so it is done once instead of per test.
+ * <p>
+ * Needs BouncyCastle (<code>org.bouncycastle:bcprov-jdk15on</code>) in the test classpath.
+ */
+final class SelfSignedCertificate {
+
+    private static final String HOST = "localhost";
+    private static final String LOOPBACK = "127.0.0.1";
+    private static final int KEY_SIZE = 2048;
+    private static final long VALIDITY_DAYS = 1;
+    private static final char[] PASSWORD = "password".toCharArray();
+
+    private static SelfSignedCertificate instance;
+
+    private final SSLSocketFactory serverSocketFactory;
+    private final SSLSocketFactory clientSocketFactory;
+    private final X509TrustManager trustManager;
+
+    private SelfSignedCertificate(SSLSocketFactory serverSocketFactory,
+                                  SSLSocketFactory clientSocketFactory,
+                                  X509TrustManager trustManager) {
+        this.serverSocketFactory = serverSocketFactory;
+        this.clientSocketFactory = clientSocketFactory;
+        this.trustManager = trustManager;
+    }
+
+    static synchronized SelfSignedCertificate get() {
+
+        if (instance == null) {
+            try {
+                instance = generate();
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Could not generate a certificate for " + HOST, e);
+            }
+        }
+
+        return instance;
+    }
+
+    /**
+     * Serves the certificate. Used by the {@link okhttp3.mockwebserver.MockWebServer}.
+     */
+    SSLSocketFactory serverSocketFactory() {
+        return serverSocketFactory;
+    }
+
+    /**
+     * Trusts only this certificate. Used by clients.
+     */
+    SSLSocketFactory clientSocketFactory() {
+        return clientSocketFactory;
+    }
+
+    X509TrustManager trustManager() {
+        return trustManager;
+    }
+
+    // X509v3CertificateBuilder replaces the generator but needs bcpkix for its ContentSigner.
+    // The generator keeps the dependency of HTTPS rules down to bcprov alone.
+    @SuppressWarnings("deprecation")
+    private static SelfSignedCertificate generate() throws GeneralSecurityException {
+
+        final SecureRandom random = new SecureRandom();
+        final KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(KEY_SIZE, random);
+        final KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+        final long now = System.currentTimeMillis();
+        final X500Principal subject = new X500Principal("CN=" + HOST);
+
+        final X509V3CertificateGenerator generator = new X509V3CertificateGenerator();
+        generator.setSerialNumber(BigInteger.valueOf(now));
+        generator.setIssuerDN(subject);
+        generator.setSubjectDN(subject);
+        generator.setNotBefore(new Date(now - TimeUnit.HOURS.toMillis(1)));
+        generator.setNotAfter(new Date(now + TimeUnit.DAYS.toMillis(VALIDITY_DAYS)));
+        generator.setPublicKey(keyPair.getPublic());
+        generator.setSignatureAlgorithm("SHA256withRSA");
+        // clients verify the host name against the subject alternative names only
+        generator.addExtension(Extension.subjectAlternativeName, false, new GeneralNames(
+                new GeneralName[]{
+                        new GeneralName(GeneralName.dNSName, HOST),
+                        new GeneralName(GeneralName.iPAddress, LOOPBACK)
+                }));
+
+        final X509Certificate certificate = generator.generate(keyPair.getPrivate(), random);
+
+        final KeyStore keyStore = newKeyStore();
+        keyStore.setKeyEntry("private", keyPair.getPrivate(), PASSWORD,
+                new Certificate[]{certificate});
+        final KeyManagerFactory keyManagerFactory =
+                KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, PASSWORD);
+
+        final KeyStore trustStore = newKeyStore();
+        trustStore.setCertificateEntry("localhost", certificate);
+        final TrustManagerFactory trustManagerFactory =
+                TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(trustStore);
+        final X509TrustManager trustManager =
+                (X509TrustManager) trustManagerFactory.getTrustManagers()[0];
+
+        final SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagerFactory.getKeyManagers(), null, random);
+
+        final SSLContext clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, new TrustManager[]{trustManager}, random);
+
+        return new SelfSignedCertificate(serverContext.getSocketFactory(),
+                clientContext.getSocketFactory(), trustManager);
+    }
+
+    private static KeyStore newKeyStore() throws GeneralSecurityException {
+
+        final KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+
+        try {
+            keyStore.load(null, PASSWORD);
+        } catch (IOException e) {
+            throw new GeneralSecurityException(e);
+        }
+
+        return keyStore;
+    }
+}
@@ -0,0 +1,59 @@
+package br.com.concretesolutions.requestmatcher;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Hash index from a key to the stubs tagged with it. Used by {@link MatcherDispatcher} to only
+ * run full matching on the few stubs that can possibly match a request.
+ */
+final class StubIndex {
+
+    private final ConcurrentMap<String, Set<MatcherDispatcher.ResponseWithMatcher>> buckets =
+            new ConcurrentHashMap<>();
+
+    void add(String key, MatcherDispatcher.ResponseWithMatcher stub) {
+
+        Set<MatcherDispatcher.ResponseWithMatcher> bucket = buckets.get(key);
+
+        if (bucket == null) {
+            final Set<MatcherDispatcher.ResponseWithMatcher> newBucket = newBucket();
+            bucket = buckets.putIfAbsent(key, newBucket);
+
+            if (bucket == null) {
+                bucket = newBucket;
+            }
+        }
+
+        bucket.add(stub);
+    }
+
+    Set<MatcherDispatcher.ResponseWithMatcher> get(String key) {
+
+        if (key == null) {
+            return Collections.emptySet();
+        }
+
+        final Set<MatcherDispatcher.ResponseWithMatcher> bucket = buckets.get(key);
+        return bucket != null ? bucket : Collections.<MatcherDispatcher.ResponseWithMatcher>emptySet();
+    }
+
+    /**
+     * Every bucket of this index.
+     */
+    Collection<Set<MatcherDispatcher.ResponseWithMatcher>> buckets() {
+        return buckets.values();
+    }
+
+    boolean isEmpty() {
+        return buckets.isEmpty();
+    }
+
+    static Set<MatcherDispatcher.ResponseWithMatcher> newBucket() {
+        return Collections.newSetFromMap(
+                new ConcurrentHashMap<MatcherDispatcher.ResponseWithMatcher, Boolean>());
+    }
+}
@@ -0,0 +1,249 @@
+package br.com.concretesolutions.requestmatcher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import br.com.concretesolutions.requestmatcher.matchers.PathTemplateMatcher;
+import br.com.concretesolutions.requestmatcher.model.HttpMethod;
+import okhttp3.mockwebserver.MockResponse;
+import okio.Buffer;
+
+/**
+ * A JSON manifest of stubs compiled into {@link RequestMatchersGroup}s and response prototypes.
+ * A manifest is compiled once per JVM and reused by every test that loads it: matchers are
+ * stateless and each test serves its own copy of the responses.
+ * <pre>
+ * {
+ *   "stubs": [
+ *     {
+ *       "method": "GET",
+ *       "path": "/users/{id}",
+ *       "query": {"expand": "posts"},
+ *       "headers": {"Accept": "application/json"},
+ *       "json": {"$.filter.active": true},
+ *       "fixture": "users/user.json",
+ *       "status": 200,
+ *       "responseHeaders": {"Cache-Control": "no-cache"},
+ *       "consumption": "reusable"
+ *     }
+ *   ]
+ * }
+ * </pre>
+ */
+final class StubManifest {
+
+    private static final ConcurrentMap<String, StubManifest> COMPILED = new ConcurrentHashMap<>();
+
+    private static final String REUSABLE = "reusable";
+    private static final String ONCE = "once";
+
+    private final List<Stub> stubs;
+
+    private StubManifest(List<Stub> stubs) {
+        this.stubs = Collections.unmodifiableList(stubs);
+    }
+
+    /**
+     * The compiled manifest at the given path inside the fixtures folder of the rule. Compiled on
+     * the first call and cached for the JVM.
+     */
+    static StubManifest load(RequestMatcherRule rule, String fixturesRootFolder, String path) {
+
+        final String key = fixturesRootFolder + '/' + path;
+        final StubManifest cached = COMPILED.get(key);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        final StubManifest compiled;
+
+        try {
+            final InputStream manifest = rule.open(key);
+
+            if (manifest == null) {
+                throw new IllegalArgumentException("Could not open manifest " + path);
+            }
+
+            compiled = compile(new JsonReader(new InputStreamReader(manifest,
+                    Charset.forName("UTF-8"))), rule);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read manifest with path " + path, e);
+        }
+
+        final StubManifest raced = COMPILED.putIfAbsent(key, compiled);
+        return raced != null ? raced : compiled;
+    }
+
+    List<Stub> getStubs() {
+        return stubs;
+    }
+
+    private static StubManifest compile(JsonReader reader, RequestMatcherRule rule)
+            throws IOException {
+
+        final List<Stub> stubs = new ArrayList<>();
+
+        try {
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+
+                if (!"stubs".equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+
+                reader.beginArray();
+
+                while (reader.hasNext()) {
+                    stubs.add(compileStub(reader, rule, stubs.size()));
+                }
+
+                reader.endArray();
+            }
+
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+
+        return new StubManifest(stubs);
+    }
+
+    private static Stub compileStub(JsonReader reader, RequestMatcherRule rule, int index)
+            throws IOException {
+
+        final RequestMatchersGroup matcher = new RequestMatchersGroup();
+        final MockResponse response = new MockResponse();
+        String fixture = null;
+        int status = 200;
+        boolean reusable = false;
+
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+
+            final String name = reader.nextName();
+
+            if ("method".equals(name)) {
+                matcher.methodIs(HttpMethod.valueOf(reader.nextString().toUpperCase(Locale.US)));
+            } else if ("path".equals(name)) {
+                final String path = reader.nextString();
+
+                if (PathTemplateMatcher.isTemplate(path)) {
+                    matcher.pathMatches(PathTemplateMatcher.matchesTemplate(path));
+                } else {
+                    matcher.pathIs(path);
+                }
+            } else if ("query".equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    matcher.queriesContain(reader.nextName(), reader.nextScalar());
+                }
+                reader.endObject();
+            } else if ("headers".equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    // request header names are compared in lower case
+                    matcher.headersContain(reader.nextName().toLowerCase(Locale.US),
+                            reader.nextScalar());
+                }
+                reader.endObject();
+            } else if ("json".equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    matcher.jsonPathIs(reader.nextName(), nextJsonValue(reader));
+                }
+                reader.endObject();
+            } else if ("fixture".equals(name)) {
+                fixture = reader.nextString();
+            } else if ("status".equals(name)) {
+                status = reader.nextInt();
+            } else if ("responseHeaders".equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    response.addHeader(reader.nextName(), reader.nextScalar());
+                }
+                reader.endObject();
+            } else if ("consumption".equals(name)) {
+                reusable = isReusable(reader.nextString(), index);
+            } else {
+                throw new IOException("Unknown field " + name + " in stub " + index);
+            }
+        }
+
+        reader.endObject();
+
+        response.setResponseCode(status);
+
+        if (fixture != null) {
+            response.setBody(new Buffer().write(rule.readBinaryFixture(fixture)));
+        }
+
+        return new Stub(matcher, response, reusable,
+                fixture != null ? IOReader.mimeTypeFromExtension(fixture) : null);
+    }
+
+    private static boolean isReusable(String consumption, int index) throws IOException {
+
+        if (REUSABLE.equals(consumption)) {
+            return true;
+        } else if (ONCE.equals(consumption)) {
+            return false;
+        }
+
+        throw new IOException("Unknown consumption " + consumption + " in stub " + index
+                + ". Use " + ONCE + " or " + REUSABLE + '.');
+    }
+
+    // typed like the values json-path reads from the body so that they are equal
+    private static Object nextJsonValue(JsonReader reader) throws IOException {
+
+        switch (reader.peek()) {
+            case NUMBER:
+                final String number = reader.nextString();
+
+                try {
+                    final long value = Long.parseLong(number);
+                    return value == (int) value ? Integer.valueOf((int) value) : Long.valueOf(value);
+                } catch (NumberFormatException e) {
+                    return Double.valueOf(number);
+                }
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return null;
+            default:
+                return reader.nextString();
+        }
+    }
+
+    /**
+     * A compiled stub. The response is a prototype: each test serves its own copy.
+     */
+    static final class Stub {
+
+        final RequestMatchersGroup matcher;
+        final MockResponse response;
+        final boolean reusable;
+        final String guessedMimeType;
+
+        Stub(RequestMatchersGroup matcher, MockResponse response, boolean reusable,
+             String guessedMimeType) {
+            this.matcher = matcher;
+            this.response = response;
+            this.reusable = reusable;
+            this.guessedMimeType = guessedMimeType;
+        }
+    }
+}
@@ -3,10 +3,12 @@ package br.com.concretesolutions.requestmatcher.exception;
 import br.com.concretesolutions.requestmatcher.RequestMatchersGroup;
 import okhttp3.Headers;
 import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
 
 public class NoMatchersForRequestException extends RuntimeException {
 
     private static final String PRE_WITH_REQ = "No matcher found for request: \n\n";
+    private static final long MAX_BODY_PREVIEW = 64 * 1024;
 
     private NoMatchersForRequestException(Builder builder) {
         super(builder.sb.toString());
@@ -54,7 +56,22 @@ public class NoMatchersForRequestException extends RuntimeException {
             sb.append("\n> ").append(headers.name(i)).append(": ").append(headers.value(i));
         }
 
-        final String body = request.getBody().clone().readUtf8();
-        return body.isEmpty() ? sb : sb.append("\n\n").append(body);
+        final Buffer body = request.getBody();
+
+        if (body.size() == 0) {
+            return sb;
+        }
+
+        // copy only the start of big bodies instead of the whole upload
+        final long previewSize = Math.min(body.size(), MAX_BODY_PREVIEW);
+        final Buffer preview = new Buffer();
+        body.copyTo(preview, 0, previewSize);
+        sb.append("\n\n").append(preview.readUtf8());
+
+        if (previewSize < body.size()) {
+            sb.append("\n... (").append(body.size() - previewSize).append(" more bytes)");
+        }
+
+        return sb;
     }
 }
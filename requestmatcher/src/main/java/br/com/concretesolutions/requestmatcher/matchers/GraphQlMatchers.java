@@ -0,0 +1,45 @@
+package br.com.concretesolutions.requestmatcher.matchers;
+
+import org.hamcrest.FeatureMatcher;
+import org.hamcrest.Matcher;
+
+import br.com.concretesolutions.requestmatcher.model.GraphQlOperation;
+
+/**
+ * Matchers for the {@link GraphQlOperation} of a request.
+ */
+public final class GraphQlMatchers {
+
+    public static Matcher<GraphQlOperation> operationName(Matcher<? super String> nameMatcher) {
+        return new FeatureMatcher<GraphQlOperation, String>(nameMatcher, "operation name", "operation name") {
+            @Override
+            protected String featureValueOf(GraphQlOperation actual) {
+                return actual.getName();
+            }
+        };
+    }
+
+    public static Matcher<GraphQlOperation> operationType(Matcher<? super GraphQlOperation.Type> typeMatcher) {
+        return new FeatureMatcher<GraphQlOperation, GraphQlOperation.Type>(typeMatcher, "operation type", "operation type") {
+            @Override
+            protected GraphQlOperation.Type featureValueOf(GraphQlOperation actual) {
+                return actual.getType();
+            }
+        };
+    }
+
+    /**
+     * Matches the variables of the operation with JSON path predicates.
+     */
+    public static Matcher<GraphQlOperation> variables(Matcher<Object> variablesMatcher) {
+        return new FeatureMatcher<GraphQlOperation, Object>(variablesMatcher, "variables", "variables") {
+            @Override
+            protected Object featureValueOf(GraphQlOperation actual) {
+                return actual.getVariables();
+            }
+        };
+    }
+
+    private GraphQlMatchers() {
+    }
+}
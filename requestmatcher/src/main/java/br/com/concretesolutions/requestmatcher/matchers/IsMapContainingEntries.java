@@ -0,0 +1,91 @@
+package br.com.concretesolutions.requestmatcher.matchers;
+
+import org.hamcrest.Description;
+import org.hamcrest.TypeSafeDiagnosingMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matches if the map contains all the expected entries. Unlike nesting
+ * <code>allOf(hasEntry(...), ...)</code> this holds every entry in a single matcher: it does one
+ * lookup per expected entry and describes itself and all mismatches in a single level. Every
+ * entry is checked, so two entries with the same key and different values never match.
+ */
+public final class IsMapContainingEntries
+        extends TypeSafeDiagnosingMatcher<Map<? extends String, ? extends String>> {
+
+    private final List<String> keys = new ArrayList<>();
+    private final List<String> values = new ArrayList<>();
+
+    public IsMapContainingEntries put(String key, String value) {
+        keys.add(key);
+        values.add(value);
+        return this;
+    }
+
+    @Override
+    protected boolean matchesSafely(Map<? extends String, ? extends String> actual,
+                                    Description mismatchDescription) {
+
+        boolean matches = true;
+
+        for (int i = 0; i < keys.size(); i++) {
+
+            final String key = keys.get(i);
+            final String expectedValue = values.get(i);
+            final String actualValue = actual.get(key);
+            final boolean present = actualValue != null || actual.containsKey(key);
+
+            // a null value only matches a key mapped to null, like hasEntry(key, null)
+            if (present && (expectedValue == null
+                    ? actualValue == null
+                    : expectedValue.equals(actualValue))) {
+                continue;
+            }
+
+            if (!matches) {
+                mismatchDescription.appendText(", ");
+            }
+
+            matches = false;
+            mismatchDescription.appendValue(key);
+
+            if (!present) {
+                mismatchDescription.appendText(" was missing");
+            } else {
+                mismatchDescription.appendText(" was ").appendValue(actualValue);
+            }
+        }
+
+        return matches;
+    }
+
+    @Override
+    public void describeTo(Description description) {
+
+        description.appendText("map containing [");
+
+        for (int i = 0; i < keys.size(); i++) {
+
+            if (i > 0) {
+                description.appendText(", ");
+            }
+
+            description.appendValue(keys.get(i)).appendText("->").appendValue(values.get(i));
+        }
+
+        description.appendText("]");
+    }
+
+    /**
+     * Creates a matcher for maps containing the given entry. More entries can be added with put.
+     * <p/>
+     * For example:
+     * <pre>assertThat(myMap, hasEntries("key", "value").put("other", "value"))</pre>
+     */
+    public static IsMapContainingEntries hasEntries(String key, String value) {
+        return new IsMapContainingEntries().put(key, value);
+    }
+}
@@ -0,0 +1,53 @@
+package br.com.concretesolutions.requestmatcher.matchers;
+
+import com.jayway.jsonpath.JsonPath;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A JVM wide, bounded cache of compiled {@link JsonPath} expressions. The same expressions tend to
+ * be used by many fixtures in many tests so each one is compiled only once. The least recently
+ * used expression is dropped when the cache is full.
+ */
+public final class JsonPathCache {
+
+    static final int MAX_SIZE = 512;
+
+    private static final Map<String, JsonPath> CACHE =
+            new LinkedHashMap<String, JsonPath>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, JsonPath> eldest) {
+                    return size() > MAX_SIZE;
+                }
+            };
+
+    public static JsonPath compile(String path) {
+
+        synchronized (CACHE) {
+            final JsonPath cached = CACHE.get(path);
+
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        // compile outside the lock. Two threads compiling the same path is harmless.
+        final JsonPath compiled = JsonPath.compile(path);
+
+        synchronized (CACHE) {
+            CACHE.put(path, compiled);
+        }
+
+        return compiled;
+    }
+
+    static int size() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+
+    private JsonPathCache() {
+    }
+}
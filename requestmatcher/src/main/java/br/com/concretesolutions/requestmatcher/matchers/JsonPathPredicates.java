@@ -0,0 +1,231 @@
+package br.com.concretesolutions.requestmatcher.matchers;
+
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.InvalidJsonException;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.PathNotFoundException;
+import com.jayway.jsonpath.spi.json.JsonProvider;
+
+import org.hamcrest.Description;
+import org.hamcrest.DiagnosingMatcher;
+import org.hamcrest.Matcher;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * All JSON path predicates of a matchers group evaluated against an already parsed document.
+ * <p>
+ * Definite paths ($.a.b[0]) are merged in a tree by their common prefixes. Evaluating the group
+ * walks the document once: $.a.b and $.a.c look up "a" a single time. Other paths (wildcards,
+ * filters, deep scans) are read with their compiled {@link JsonPath}.
+ * <p>
+ * Expressions are compiled through {@link JsonPathCache}.
+ */
+public final class JsonPathPredicates extends DiagnosingMatcher<Object> {
+
+    private static final Configuration CONFIGURATION = Configuration.defaultConfiguration();
+    private static final Pattern DEFINITE_PATH = Pattern.compile("^\\$((\\['[^']*'\\])|(\\[\\d+\\]))*$");
+    private static final Pattern SEGMENT = Pattern.compile("\\['([^']*)'\\]|\\[(\\d+)\\]");
+
+    private final Node root = new Node();
+    private final List<Predicate> indefinite = new ArrayList<>();
+    private final List<Predicate> all = new ArrayList<>();
+
+    /**
+     * Parses a body once so it can be shared by all groups. Returns null for invalid JSON.
+     */
+    public static Object parse(String json) {
+        try {
+            return CONFIGURATION.jsonProvider().parse(json);
+        } catch (InvalidJsonException e) {
+            return null;
+        }
+    }
+
+    public JsonPathPredicates add(String path, Matcher<?> matcher) {
+
+        final JsonPath compiled = JsonPathCache.compile(path);
+        final Predicate predicate = new Predicate(compiled, matcher);
+        final String normalized = compiled.getPath();
+
+        all.add(predicate);
+
+        if (!compiled.isDefinite() || !DEFINITE_PATH.matcher(normalized).matches()) {
+            indefinite.add(predicate);
+            return this;
+        }
+
+        Node node = root;
+        final java.util.regex.Matcher segments = SEGMENT.matcher(normalized);
+
+        while (segments.find()) {
+            node = node.child(segments.group());
+        }
+
+        node.predicates.add(predicate);
+        return this;
+    }
+
+    @Override
+    protected boolean matches(Object document, Description mismatch) {
+
+        if (document == null) {
+            mismatch.appendText("was not a JSON document");
+            return false;
+        }
+
+        if (!root.matches(document, CONFIGURATION.jsonProvider(), mismatch)) {
+            return false;
+        }
+
+        for (Predicate predicate : indefinite) {
+
+            final Object value;
+
+            try {
+                value = predicate.path.read(document, CONFIGURATION);
+            } catch (PathNotFoundException e) {
+                predicate.describeMissing(mismatch);
+                return false;
+            }
+
+            if (!predicate.matches(value, mismatch)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public void describeTo(Description description) {
+
+        description.appendText("json with ");
+
+        for (int i = 0; i < all.size(); i++) {
+
+            if (i > 0) {
+                description.appendText(" and ");
+            }
+
+            all.get(i).describeTo(description);
+        }
+    }
+
+    private static final class Predicate {
+
+        private final JsonPath path;
+        private final Matcher<?> matcher;
+
+        Predicate(JsonPath path, Matcher<?> matcher) {
+            this.path = path;
+            this.matcher = matcher;
+        }
+
+        boolean matches(Object value, Description mismatch) {
+
+            if (matcher.matches(value)) {
+                return true;
+            }
+
+            mismatch.appendText("json path ").appendValue(path.getPath()).appendText(" ");
+            matcher.describeMismatch(value, mismatch);
+            return false;
+        }
+
+        void describeMissing(Description mismatch) {
+            mismatch.appendText("json path ").appendValue(path.getPath()).appendText(" was not found");
+        }
+
+        void describeTo(Description description) {
+            description.appendText("json path ").appendValue(path.getPath())
+                    .appendText(" evaluated to ").appendDescriptionOf(matcher);
+        }
+    }
+
+    private static final class Node {
+
+        private final Map<String, Node> children = new LinkedHashMap<>();
+        private final List<Predicate> predicates = new ArrayList<>(1);
+
+        Node child(String segment) {
+
+            Node child = children.get(segment);
+
+            if (child == null) {
+                child = new Node();
+                children.put(segment, child);
+            }
+
+            return child;
+        }
+
+        boolean matches(Object value, JsonProvider provider, Description mismatch) {
+
+            for (Predicate predicate : predicates) {
+                if (!predicate.matches(value, mismatch)) {
+                    return false;
+                }
+            }
+
+            for (Map.Entry<String, Node> entry : children.entrySet()) {
+
+                final Object child = resolve(value, entry.getKey(), provider);
+
+                if (child == JsonProvider.UNDEFINED) {
+                    entry.getValue().describeFirstMissing(mismatch);
+                    return false;
+                }
+
+                if (!entry.getValue().matches(child, provider, mismatch)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private void describeFirstMissing(Description mismatch) {
+
+            Node node = this;
+
+            while (node.predicates.isEmpty()) {
+                node = node.children.values().iterator().next();
+            }
+
+            node.predicates.get(0).describeMissing(mismatch);
+        }
+
+        private static Object resolve(Object value, String segment, JsonProvider provider) {
+
+            if (value == null) {
+                return JsonProvider.UNDEFINED;
+            }
+
+            if (segment.charAt(1) == '\'') {
+
+                if (!provider.isMap(value)) {
+                    return JsonProvider.UNDEFINED;
+                }
+
+                return provider.getMapValue(value, segment.substring(2, segment.length() - 2));
+            }
+
+            if (!provider.isArray(value)) {
+                return JsonProvider.UNDEFINED;
+            }
+
+            final int index = Integer.parseInt(segment.substring(1, segment.length() - 1));
+
+            if (index >= provider.length(value)) {
+                return JsonProvider.UNDEFINED;
+            }
+
+            return provider.getArrayIndex(value, index);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package br.com.concretesolutions.requestmatcher.matchers;
+
+import org.hamcrest.Description;
+import org.hamcrest.FeatureMatcher;
+import org.hamcrest.Matcher;
+import org.hamcrest.TypeSafeDiagnosingMatcher;
+
+import br.com.concretesolutions.requestmatcher.model.Multipart;
+import okio.ByteString;
+
+/**
+ * Matchers for {@link Multipart} bodies and their parts. Part bodies are only read by the body
+ * matchers so that parts nobody asserts on are never copied.
+ */
+public final class MultipartMatchers {
+
+    /**
+     * Matches if the number of parts satisfies the nested matcher.
+     */
+    public static Matcher<Multipart> hasPartCount(Matcher<? super Integer> countMatcher) {
+        return new FeatureMatcher<Multipart, Integer>(countMatcher, "a multipart body with part count", "part count") {
+            @Override
+            protected Integer featureValueOf(Multipart actual) {
+                return actual.size();
+            }
+        };
+    }
+
+    /**
+     * Matches if there is a part with the given form name that satisfies the nested matcher.
+     */
+    public static Matcher<Multipart> hasPart(String name, Matcher<? super Multipart.BodyPart> partMatcher) {
+        return new HasPart(name, partMatcher);
+    }
+
+    public static Matcher<Multipart.BodyPart> partFilename(Matcher<? super String> filenameMatcher) {
+        return new FeatureMatcher<Multipart.BodyPart, String>(filenameMatcher, "filename", "filename") {
+            @Override
+            protected String featureValueOf(Multipart.BodyPart actual) {
+                return actual.getFilename();
+            }
+        };
+    }
+
+    public static Matcher<Multipart.BodyPart> partContentType(Matcher<? super String> contentTypeMatcher) {
+        return new FeatureMatcher<Multipart.BodyPart, String>(contentTypeMatcher, "content type", "content type") {
+            @Override
+            protected String featureValueOf(Multipart.BodyPart actual) {
+                return actual.getContentType();
+            }
+        };
+    }
+
+    public static Matcher<Multipart.BodyPart> partBody(Matcher<? super String> bodyMatcher) {
+        return new FeatureMatcher<Multipart.BodyPart, String>(bodyMatcher, "body", "body") {
+            @Override
+            protected String featureValueOf(Multipart.BodyPart actual) {
+                return actual.getBodyUtf8();
+            }
+        };
+    }
+
+    public static Matcher<Multipart.BodyPart> partBytes(Matcher<? super ByteString> bytesMatcher) {
+        return new FeatureMatcher<Multipart.BodyPart, ByteString>(bytesMatcher, "bytes", "bytes") {
+            @Override
+            protected ByteString featureValueOf(Multipart.BodyPart actual) {
+                return actual.getBody();
+            }
+        };
+    }
+
+    private static final class HasPart extends TypeSafeDiagnosingMatcher<Multipart> {
+
+        private final String name;
+        private final Matcher<? super Multipart.BodyPart> partMatcher;
+
+        HasPart(String name, Matcher<? super Multipart.BodyPart> partMatcher) {
+            this.name = name;
+            this.partMatcher = partMatcher;
+        }
+
+        @Override
+        protected boolean matchesSafely(Multipart item, Description mismatchDescription) {
+
+            final Multipart.BodyPart part = item.getPart(name);
+
+            if (part == null) {
+                mismatchDescription.appendText("no part named ").appendValue(name)
+                        .appendText(" in ").appendValue(item);
+                return false;
+            }
+
+            if (!partMatcher.matches(part)) {
+                mismatchDescription.appendText("part ").appendValue(name).appendText(" ");
+                partMatcher.describeMismatch(part, mismatchDescription);
+                return false;
+            }
+
+            return true;
+        }
+
+        @Override
+        public void describeTo(Description description) {
+            description.appendText("a part named ").appendValue(name)
+                    .appendText(" with ").appendDescriptionOf(partMatcher);
+        }
+    }
+
+    private MultipartMatchers() {
+    }
+}
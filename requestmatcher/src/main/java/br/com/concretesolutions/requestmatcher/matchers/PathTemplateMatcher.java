@@ -0,0 +1,73 @@
+package br.com.concretesolutions.requestmatcher.matchers;
+
+import org.hamcrest.Description;
+import org.hamcrest.TypeSafeMatcher;
+
+import java.util.regex.Pattern;
+
+/**
+ * Matches paths against a template like <code>/users/{id}/posts/{postId}</code>. Each
+ * <code>{name}</code> matches a single non empty path segment. The template is compiled once
+ * into a regular expression.
+ */
+public final class PathTemplateMatcher extends TypeSafeMatcher<String> {
+
+    private final String template;
+    private final Pattern pattern;
+
+    private PathTemplateMatcher(String template) {
+        this.template = template;
+        this.pattern = compile(template);
+    }
+
+    public static PathTemplateMatcher matchesTemplate(String template) {
+        return new PathTemplateMatcher(template);
+    }
+
+    /**
+     * Whether the path has variables. Paths without them can be matched with a plain equality.
+     */
+    public static boolean isTemplate(String path) {
+        final int start = path.indexOf('{');
+        return start != -1 && path.indexOf('}', start) != -1;
+    }
+
+    private static Pattern compile(String template) {
+
+        final StringBuilder regex = new StringBuilder();
+        int literalStart = 0;
+        int variableStart;
+
+        while ((variableStart = template.indexOf('{', literalStart)) != -1) {
+
+            final int variableEnd = template.indexOf('}', variableStart);
+
+            if (variableEnd == -1) {
+                break;
+            }
+
+            if (variableStart > literalStart) {
+                regex.append(Pattern.quote(template.substring(literalStart, variableStart)));
+            }
+
+            regex.append("[^/]+");
+            literalStart = variableEnd + 1;
+        }
+
+        if (literalStart < template.length()) {
+            regex.append(Pattern.quote(template.substring(literalStart)));
+        }
+
+        return Pattern.compile(regex.toString());
+    }
+
+    @Override
+    protected boolean matchesSafely(String path) {
+        return pattern.matcher(path).matches();
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText("a path matching the template ").appendValue(template);
+    }
+}
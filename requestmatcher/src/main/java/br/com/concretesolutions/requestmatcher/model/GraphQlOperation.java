@@ -0,0 +1,56 @@
+package br.com.concretesolutions.requestmatcher.model;
+
+/**
+ * The GraphQL operation a request executes. Extracted once per request from the JSON body of a
+ * POST or from the query string of a GET.
+ */
+public final class GraphQlOperation {
+
+    public enum Type {
+        QUERY,
+        MUTATION,
+        SUBSCRIPTION
+    }
+
+    private final String name;
+    private final Type type;
+    private final String document;
+    private final Object variables;
+
+    public GraphQlOperation(String name, Type type, String document, Object variables) {
+        this.name = name;
+        this.type = type;
+        this.document = document;
+        this.variables = variables;
+    }
+
+    /**
+     * The operation name or null for anonymous operations.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * The raw query document.
+     */
+    public String getDocument() {
+        return document;
+    }
+
+    /**
+     * The variables as parsed by the JSON path provider or null if there are none.
+     */
+    public Object getVariables() {
+        return variables;
+    }
+
+    @Override
+    public String toString() {
+        return "GraphQlOperation{name=" + name + ", type=" + type + ", variables=" + variables + '}';
+    }
+}
@@ -13,11 +13,13 @@ public enum HttpMethod {
     COPY,
     MOVE;
 
+    private static final HttpMethod[] VALUES = values();
+
     public static HttpMethod forRequest(RecordedRequest request) {
 
         final String method = request.getMethod();
 
-        for (HttpMethod httpMethod : values()) {
+        for (HttpMethod httpMethod : VALUES) {
             if (httpMethod.name().equals(method)) {
                 return httpMethod;
             }
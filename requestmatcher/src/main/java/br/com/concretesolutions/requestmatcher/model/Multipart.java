@@ -0,0 +1,110 @@
+package br.com.concretesolutions.requestmatcher.model;
+
+import java.util.Collections;
+import java.util.List;
+
+import br.com.concretesolutions.requestmatcher.ParsedRequest;
+import okhttp3.Headers;
+import okio.ByteString;
+
+/**
+ * The parts of a multipart request body. Parts only know where their bodies are in the request
+ * body. The bytes are read on demand.
+ */
+public final class Multipart {
+
+    private final List<BodyPart> parts;
+
+    public Multipart(List<BodyPart> parts) {
+        this.parts = Collections.unmodifiableList(parts);
+    }
+
+    public List<BodyPart> getParts() {
+        return parts;
+    }
+
+    public int size() {
+        return parts.size();
+    }
+
+    /**
+     * Returns the first part with the given form name or null if there is none.
+     */
+    public BodyPart getPart(String name) {
+        for (BodyPart part : parts) {
+            if (name.equals(part.getName())) {
+                return part;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "Multipart" + parts;
+    }
+
+    public static final class BodyPart {
+
+        private final ParsedRequest request;
+        private final Headers headers;
+        private final String name;
+        private final String filename;
+        private final long bodyOffset;
+        private final long bodySize;
+
+        private ByteString body;
+
+        public BodyPart(ParsedRequest request, Headers headers, String name, String filename,
+                        long bodyOffset, long bodySize) {
+            this.request = request;
+            this.headers = headers;
+            this.name = name;
+            this.filename = filename;
+            this.bodyOffset = bodyOffset;
+            this.bodySize = bodySize;
+        }
+
+        public Headers getHeaders() {
+            return headers;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public String getContentType() {
+            return headers.get("Content-Type");
+        }
+
+        public long getBodySize() {
+            return bodySize;
+        }
+
+        /**
+         * The raw bytes of this part. Read from the request body on the first call.
+         */
+        public ByteString getBody() {
+            if (body == null) {
+                body = request.readBody(bodyOffset, bodySize);
+            }
+            return body;
+        }
+
+        public String getBodyUtf8() {
+            return getBody().utf8();
+        }
+
+        @Override
+        public String toString() {
+            return "{name=" + name
+                    + ", filename=" + filename
+                    + ", contentType=" + getContentType()
+                    + ", size=" + bodySize + '}';
+        }
+    }
+}
@@ -8,17 +8,33 @@ import org.junit.rules.RuleChain;
 import org.junit.rules.TestRule;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import br.com.concretesolutions.requestmatcher.BodyRetention;
+import br.com.concretesolutions.requestmatcher.BodyWriter;
+import br.com.concretesolutions.requestmatcher.DispatchStats;
+import br.com.concretesolutions.requestmatcher.LatencyProfile;
+import br.com.concretesolutions.requestmatcher.MatcherDispatcher;
+import br.com.concretesolutions.requestmatcher.ParsedRequest;
+import br.com.concretesolutions.requestmatcher.RequestJournal;
 import br.com.concretesolutions.requestmatcher.RequestMatcherRule;
 import br.com.concretesolutions.requestmatcher.RequestMatchersGroup;
+import br.com.concretesolutions.requestmatcher.ResponseGenerator;
+import br.com.concretesolutions.requestmatcher.RoutingKeys;
 import br.com.concretesolutions.requestmatcher.exception.RequestAssertionException;
+import br.com.concretesolutions.requestmatcher.model.GraphQlOperation;
 import br.com.concretesolutions.requestmatcher.model.HttpMethod;
+import okhttp3.FormBody;
 import okhttp3.MediaType;
+import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okio.BufferedSink;
+import okio.ByteString;
 
 import static com.jayway.jsonpath.matchers.JsonPathMatchers.hasJsonPath;
 import static com.jayway.jsonpath.matchers.JsonPathMatchers.isJson;
@@ -27,10 +43,14 @@ import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.any;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasEntry;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
 
 public abstract class RequestMatcherRuleTest extends BaseTest {
 
@@ -799,4 +819,788 @@ public abstract class RequestMatcherRuleTest extends BaseTest {
 
         client.newCall(request0).execute(); // will fail with message of non used matchers
     }
+
+    @Test
+    public void canMatchMultipartParts() throws IOException {
+
+        server.addFixture(200, "body.json")
+                .ifRequestMatches()
+                .pathIs("/upload")
+                .partsCountIs(2)
+                .partBodyMatches("description", is("a screenshot"))
+                .partFilenameIs("file", "screenshot.png")
+                .partContentTypeIs("file", "image/png");
+
+        this.request = new Request.Builder()
+                .url(server.url("/upload"))
+                .post(new MultipartBody.Builder()
+                        .setType(MultipartBody.FORM)
+                        .addFormDataPart("description", "a screenshot")
+                        .addFormDataPart("file", "screenshot.png", RequestBody.create(
+                                MediaType.parse("image/png"),
+                                server.readBinaryFixture("screenshot.png")))
+                        .build())
+                .build();
+
+        final Response resp = client.newCall(request).execute();
+
+        assertThat(resp.isSuccessful(), is(true));
+    }
+
+    @Test
+    public void failsIfMultipartPartIsMissing() throws IOException {
+
+        exceptionRule.expect(RequestAssertionException.class);
+        exceptionRule.expectMessage(
+                allOf(
+                        containsString("no part named \"file\""),
+                        containsString(RequestMatchersGroup.MULTIPART_MSG)
+                ));
+
+        server.addFixture(200, "body.json")
+                .ifRequestMatches()
+                .hasPartNamed("file");
+
+        this.request = new Request.Builder()
+                .url(server.url("/upload"))
+                .post(new MultipartBody.Builder()
+                        .setType(MultipartBody.FORM)
+                        .addFormDataPart("description", "a screenshot")
+                        .build())
+                .build();
+
+        client.newCall(request).execute();
+    }
+
+    @Test
+    public void canMatchAgainstCompiledJsonPaths() throws IOException {
+
+        server.addFixture(200, "body.json")
+                .ifRequestMatches()
+                .pathIs("/post")
+                .jsonPathIs("$.property", "value")
+                .jsonPathIs("$.parent.property", "another value")
+                .jsonPathIs("$.parent.child[0].key", 1)
+                .jsonPathMatches("$.parent.child[2].key", is(33))
+                .jsonPathExists("$.parent.child[*].key");
+
+        this.request = new Request.Builder()
+                .url(server.url("/post"))
+                .post(RequestBody.create(
+                        MediaType.parse("application/json"),
+                        server.readFixture("request/test_request.json")))
+                .build();
+
+        final Response resp = client.newCall(request).execute();
+
+        assertThat(resp.isSuccessful(), is(true));
+    }
+
+    @Test
+    public void failsForUnknownCompiledJsonPath() throws IOException {
+
+        exceptionRule.expect(RequestAssertionException.class);
+        exceptionRule.expectMessage(
+                allOf(
+                        containsString("json path \"$['parent']['unexisting']\" was not found"),
+                        containsString(RequestMatchersGroup.JSON_MSG)
+                ));
+
+        server.addFixture(200, "body.json")
+                .ifRequestMatches()
+                .jsonPathIs("$.parent.property", "another value")
+                .jsonPathIs("$.parent.unexisting", "value");
+
+        this.request = new Request.Builder()
+                .url(server.url("/post"))
+                .post(RequestBody.create(
+                        MediaType.parse("application/json"),
+                        server.readFixture("request/test_request.json")))
+                .build();
+
+        client.newCall(request).execute();
+    }
+
+    @Test
+    public void canMatchFormEntriesInAnyOrder() throws IOException {
+
+        server.addFixture(200, "body.json")
+                .ifRequestMatches()
+                .formContains("grant_type", "password")
+                .formContains("username", "john doe");
+
+        this.request = new Request.Builder()
+                .url(server.url("/token"))
+                .post(new FormBody.Builder()
+                        .add("username", "john doe")
+                        .add("password", "s3cr3t&=")
+                        .add("grant_type", "password")
+                        .build())
+                .build();
+
+        final Response resp = client.newCall(request).execute();
+
+        assertThat(resp.isSuccessful(), is(true));
+    }
+
+    @Test
+    public void failsIfFormEntryIsDifferent() throws IOException {
+
+        exceptionRule.expect(RequestAssertionException.class);
+        exceptionRule.expectMessage(
+                allOf(
+                        containsString("form: map containing [\"grant_type\"->\"password\"]"),
+                        containsString(RequestMatchersGroup.FORM_MSG)
+                ));
+
+        server.addFixture(200, "body.json")
+                .ifRequestMatches()
+                .formContains("grant_type", "password");
+
+        this.request = new Request.Builder()
+                .url(server.url("/token"))
+                .post(new FormBody.Builder()
+                        .add("grant_type", "refresh_token")
+                        .build())
+                .build();
+
+        client.newCall(request).execute();
+    }
+
+    @Test
+    public void describesAllExpectedHeadersInASingleLevel() throws IOException {
+
+        exceptionRule.expect(RequestAssertionException.class);
+        exceptionRule.expectMessage(
+                allOf(
+                        containsString("headers: map containing [\"key\"->\"value\", "
+                                + "\"other\"->\"value\", \"third\"->\"value\"]"),
+                        containsString("\"other\" was \"different\", \"third\" was missing"),
+                        containsString(RequestMatchersGroup.HEADERS_MSG)
+                ));
+
+        server.addFixture(200, "body.json")
+                .ifRequestMatches()
+                .headersContain("key", "value")
+                .headersContain("other", "value")
+                .headersContain("third", "value");
+
+        this.request = new Request.Builder()
+                .url(server.url("/get"))
+                .header("key", "value")
+                .header("other", "different")
+                .get()
+                .build();
+
+        client.newCall(request).execute();
+    }
+
+    @Test
+    public void canRouteByCustomRoutingKey() throws IOException {
+
+        server.withRoutingKeyExtractor(RoutingKeys.header("X-Operation"));
+
+        server.addFixture(201, "body.json")
+                .ifRequestMatches()
+                .routingKeyIs("create")
+                .pathIs("/rpc");
+
+        server.addFixture(200, "body.json")
+                .ifRequestMatches()
+                .routingKeyIs("read")
+                .pathIs("/rpc");
+
+        final Response read = client.newCall(new Request.Builder()
+                .url(server.url("/rpc"))
+                .header("X-Operation", "read")
+                .get()
+                .build()).execute();
+
+        final Response create = client.newCall(new Request.Builder()
+                .url(server.url("/rpc"))
+                .header("X-Operation", "create")
+                .get()
+                .build()).execute();
+
+        assertThat(read.code(), is(200));
+        assertThat(create.code(), is(201));
+    }
+
+    @Test
+    public void canMatchGraphQlOperations() throws IOException {
+
+        server.addFixture(200, "body.json")
+                .ifRequestMatches()
+                .pathIs("/graphql")
+                .graphQlOperationNameIs("GetUser")
+                .graphQlOperationTypeIs(GraphQlOperation.Type.QUERY)
+                .graphQlVariableIs("$.id", "42");
+
+        server.addFixture(201, "body.json")
+                .ifRequestMatches()
+                .pathIs("/graphql")
+                .graphQlOperationNameIs("UpdateUser")
+                .graphQlOperationTypeIs(GraphQlOperation.Type.MUTATION)
+                .graphQlVariableIs("$.user.name", "John");
+
+        final Response update = client.newCall(new Request.Builder()
+                .url(server.url("/graphql"))
+                .post(RequestBody.create(MediaType.parse("application/json"),
+                        "{\"query\": \"mutation UpdateUser($user: UserInput) { update(user: $user) { id } }\", "
+                                + "\"variables\": {\"user\": {\"name\": \"John\"}}}"))
+                .build()).execute();
+
+        final Response get = client.newCall(new Request.Builder()
+                .url(server.url("/graphql"))
+                .post(RequestBody.create(MediaType.parse("application/json"),
+                        "{\"query\": \"# user query\\nquery GetUser($id: ID) { user(id: $id) { name } }\", "
+                                + "\"operationName\": \"GetUser\", \"variables\": {\"id\": \"42\"}}"))
+                .build()).execute();
+
+        assertThat(update.code(), is(201));
+        assertThat(get.code(), is(200));
+    }
+
+    @Test
+    public void canKeepOrderPerPathAndFlow() throws IOException {
+
+        server.addFixture(201, "body.json")
+                .ifRequestMatches()
+                .pathIs("/items")
+                .pathOrderIs(2);
+
+        server.addFixture(200, "body.json")
+                .ifRequestMatches()
+                .pathIs("/items")
+                .pathOrderIs(1);
+
+        server.addFixture(202, "body.json")
+                .ifRequestMatches()
+                .pathIs("/checkout")
+                .flowOrderIs("checkout", 2);
+
+        server.addFixture(200, "body.json")
+                .ifRequestMatches()
+                .pathIs("/cart")
+                .flowOrderIs("checkout", 1);
+
+        server.addFixture(200, "body.json")
+                .ifRequestMatches()
+                .pathIs("/analytics");
+
+        final Request items = new Request.Builder().url(server.url("/items")).get().build();
+
+        // unrelated requests in between do not shift the order of a path or flow
+        assertThat(client.newCall(new Request.Builder().url(server.url("/analytics")).get().build())
+                .execute().code(), is(200));
+        assertThat(client.newCall(items).execute().code(), is(200));
+        assertThat(client.newCall(new Request.Builder().url(server.url("/cart")).get().build())
+                .execute().code(), is(200));
+        assertThat(client.newCall(items).execute().code(), is(201));
+        assertThat(client.newCall(new Request.Builder().url(server.url("/checkout")).get().build())
+                .execute().code(), is(202));
+    }
+
+    @Test
+    public void canDelayFixturesWithLatencyProfiles() throws IOException {
+
+        server.addFixture(200, "body.json")
+                .withLatency(LatencyProfile.builder()
+                        .headersDelay(100, TimeUnit.MILLISECONDS)
+                        .build())
+                .ifRequestMatches()
+                .pathIs("/slow");
+
+        final long start = System.nanoTime();
+        final Response response = client.newCall(new Request.Builder()
+                .url(server.url("/slow"))
+                .get()
+                .build()).execute();
+
+        assertThat(response.code(), is(200));
+        assertThat(System.nanoTime() - start, greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100)));
+    }
+
+    @Test
+    public void canServeReusableFixturesManyTimes() throws IOException {
+
+        server.addFixture(200, "body.json")
+                .reusable()
+                .ifRequestMatches()
+                .pathIs("/config");
+
+        final Request config = new Request.Builder().url(server.url("/config")).get().build();
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(client.newCall(config).execute().code(), is(200));
+        }
+    }
+
+    @Test
+    public void failsIfReusableFixtureIsNeverUsed() {
+
+        exceptionRule.expect(RequestAssertionException.class);
+        exceptionRule.expectMessage(containsString("There are fixtures that were not used"));
+
+        server.addFixture(200, "body.json")
+                .reusable()
+                .ifRequestMatches()
+                .pathIs("/config");
+    }
+
+    @Test
+    public void recordsDispatchStats() throws IOException {
+
+        server.withDispatchStats(false);
+
+        server.addFixture(200, "body.json")
+                .ifRequestMatches()
+                .pathIs("/first");
+
+        server.addFixture(200, "body.json")
+                .ifRequestMatches()
+                .pathIs("/second");
+
+        client.newCall(new Request.Builder().url(server.url("/second")).get().build()).execute();
+        client.newCall(new Request.Builder().url(server.url("/first")).get().build()).execute();
+
+        final DispatchStats stats = server.getDispatchStats();
+
+        assertThat(stats.getRequestCount(), is(2L));
+        assertThat(stats.getCandidatesPerRequest().getMax(), lessThanOrEqualTo(2L));
+        assertThat(stats.getStubs().get(0).getHits(), is(1L));
+        assertThat(stats.getStubs().get(1).getHits(), is(1L));
+        assertThat(stats.summary(), containsString("Dispatched 2 requests"));
+    }
+
+    @Test
+    public void canVerifyRequestsInTheJournal() throws IOException {
+
+        server.withJournal(2, BodyRetention.upTo(4));
+
+        final RequestMatchersGroup post = server.addFixture(200, "body.json")
+                .reusable()
+                .ifRequestMatches()
+                .pathIs("/post");
+
+        for (int i = 0; i < 3; i++) {
+            client.newCall(new Request.Builder()
+                    .url(server.url("/post?page=" + i))
+                    .post(RequestBody.create(MediaType.parse("text/plain"), "body " + i))
+                    .build()).execute();
+        }
+
+        server.verify(post).calledTimes(3);
+
+        final List<RequestJournal.Entry> requests = server.requestsTo("/post");
+
+        // only the last two are kept, with the first 4 bytes of their bodies
+        assertThat(requests.size(), is(2));
+        assertThat(requests.get(1).getFullPath(), is("/post?page=2"));
+        assertThat(requests.get(1).getBodyUtf8(), is("body"));
+        assertThat(requests.get(1).getBodySize(), is(6L));
+        assertThat(requests.get(1).getMatcher(), is(sameInstance(post)));
+    }
+
+    @Test
+    public void failsVerificationWithTheExpectedMatchers() throws IOException {
+
+        server.withJournal(10);
+
+        final RequestMatchersGroup get = server.addFixture(200, "body.json")
+                .ifRequestMatches()
+                .pathIs("/get");
+
+        client.newCall(new Request.Builder().url(server.url("/get")).get().build()).execute();
+
+        try {
+            server.verify(get).calledTimes(2);
+            fail();
+        } catch (AssertionError e) {
+            assertThat(e.getMessage(), containsString("path: is \"/get\""));
+        }
+    }
+
+    @Test
+    public void canSpillBigBodiesToDisk() throws IOException {
+
+        server.withJournal(10, BodyRetention.spillToDisk(16));
+
+        server.addFixture(200, "body.json")
+                .reusable()
+                .ifRequestMatches()
+                .pathIs("/upload");
+
+        final StringBuilder bigBody = new StringBuilder();
+
+        for (int i = 0; i < 1000; i++) {
+            bigBody.append("line ").append(i).append('\n');
+        }
+
+        client.newCall(new Request.Builder()
+                .url(server.url("/upload"))
+                .post(RequestBody.create(MediaType.parse("text/plain"), "small"))
+                .build()).execute();
+        client.newCall(new Request.Builder()
+                .url(server.url("/upload"))
+                .post(RequestBody.create(MediaType.parse("text/plain"), bigBody.toString()))
+                .build()).execute();
+
+        final List<RequestJournal.Entry> uploads = server.requestsTo("/upload");
+
+        assertThat(uploads.get(0).isBodySpilled(), is(false));
+        assertThat(uploads.get(0).getBodyUtf8(), is("small"));
+
+        final RequestJournal.Entry big = uploads.get(1);
+        assertThat(big.isBodySpilled(), is(true));
+        assertThat(big.isBodyTruncated(), is(false));
+        assertThat(big.getBody().size(), is(1024));
+        assertThat(big.getBodyDigest(), is(ByteString.encodeUtf8(bigBody.toString()).sha256()));
+        assertThat(big.openBody().readUtf8(), is(bigBody.toString()));
+    }
+
+    @Test
+    public void canReplayRecordedExchanges() throws IOException {
+
+        final List<RequestMatcherRule.IfRequestMatches<RequestMatchersGroup>> fixtures =
+                server.replay("recordings/SampleTest_poll/recordings.json");
+
+        assertThat(fixtures.size(), is(2));
+
+        final Response pending = client.newCall(new Request.Builder()
+                .url(server.url("/jobs?id=42"))
+                .get()
+                .build()).execute();
+
+        assertThat(pending.code(), is(202));
+        assertThat(pending.body().string(), is("{\"state\":\"PENDING\"}"));
+
+        final Response done = client.newCall(new Request.Builder()
+                .url(server.url("/jobs?id=42"))
+                .get()
+                .build()).execute();
+
+        assertThat(done.code(), is(200));
+        assertThat(done.header("X-Job"), is("done"));
+        assertThat(done.body().string(), is("{\"state\":\"DONE\"}"));
+    }
+
+    @Test
+    public void canImportHarFiles() throws IOException {
+
+        server.withDefaultHeader("X-Imported", "true");
+
+        final List<RequestMatcherRule.IfRequestMatches<RequestMatchersGroup>> fixtures =
+                server.importHar("session.har");
+
+        // the aborted entry has no response
+        assertThat(fixtures.size(), is(3));
+
+        final Response config = client.newCall(new Request.Builder()
+                .url(server.url("/config?version=2&platform=android"))
+                .get()
+                .build()).execute();
+
+        assertThat(config.header("Content-Type"), is("application/json"));
+        assertThat(config.header("Content-Encoding"), is(nullValue()));
+        assertThat(config.header("X-Imported"), is("true"));
+        assertThat(config.body().string(), is("{\"theme\":\"dark\"}"));
+
+        for (int page = 1; page <= 2; page++) {
+            final Response feed = client.newCall(new Request.Builder()
+                    .url(server.url("/feed"))
+                    .get()
+                    .build()).execute();
+
+            assertThat(feed.body().string(), is("{\"page\":" + page + "}"));
+        }
+    }
+
+    @Test
+    public void canLoadStubManifests() throws IOException {
+
+        server.loadManifest("manifest.json");
+
+        for (String id : new String[]{"1", "42"}) {
+            final Response user = client.newCall(new Request.Builder()
+                    .url(server.url("/users/" + id + "?expand=posts"))
+                    .header("Accept", "application/json")
+                    .get()
+                    .build()).execute();
+
+            assertThat(user.code(), is(200));
+            assertThat(user.header("Content-Type"), is("application/json"));
+            assertThat(user.body().string(), containsString("\"property\""));
+        }
+
+        final Response search = client.newCall(new Request.Builder()
+                .url(server.url("/search"))
+                .post(RequestBody.create(MediaType.parse("application/json"),
+                        "{\"filter\":{\"active\":true},\"page\":2}"))
+                .build()).execute();
+
+        assertThat(search.code(), is(201));
+        assertThat(search.header("X-Total"), is("10"));
+    }
+
+    @Test
+    public void canServeFixturesByScenarioState() throws IOException {
+
+        server.addResponse(new MockResponse().setBody("PENDING"))
+                .inScenario("job", MatcherDispatcher.SCENARIO_STARTED)
+                .willSetStateTo("polled once")
+                .ifRequestMatches()
+                .pathIs("/job");
+
+        server.addResponse(new MockResponse().setBody("PENDING"))
+                .inScenario("job", "polled once")
+                .willSetStateTo("polled twice")
+                .ifRequestMatches()
+                .pathIs("/job");
+
+        server.addResponse(new MockResponse().setBody("DONE"))
+                .inScenario("job", "polled twice")
+                .willSetStateTo("done")
+                .reusable()
+                .ifRequestMatches()
+                .pathIs("/job");
+
+        final String[] expected = {"PENDING", "PENDING", "DONE", "DONE"};
+
+        for (String body : expected) {
+            final Response response = client.newCall(new Request.Builder()
+                    .url(server.url("/job"))
+                    .get()
+                    .build()).execute();
+
+            assertThat(response.body().string(), is(body));
+        }
+
+        assertThat(server.getScenarioState("job"), is("done"));
+    }
+
+    @Test
+    public void canGenerateResponsesForEachRequest() throws IOException {
+
+        server.respondWith(new MockResponse().addHeader("Content-Type", "application/json"),
+                new BodyWriter() {
+                    @Override
+                    public void write(ParsedRequest request, BufferedSink body) throws IOException {
+                        body.writeUtf8("{\"page\":")
+                                .writeUtf8(request.getQueries().get("page"))
+                                .writeUtf8("}");
+                    }
+                })
+                .reusable()
+                .ifRequestMatches()
+                .pathIs("/items");
+
+        server.respondWith(new ResponseGenerator() {
+            @Override
+            public MockResponse generate(ParsedRequest request) {
+                return new MockResponse().setResponseCode(201).setBody(request.getBodyUtf8());
+            }
+        })
+                .ifRequestMatches()
+                .pathIs("/echo");
+
+        for (int page = 1; page <= 3; page++) {
+            final Response response = client.newCall(new Request.Builder()
+                    .url(server.url("/items?page=" + page))
+                    .get()
+                    .build()).execute();
+
+            assertThat(response.header("Content-Type"), is("application/json"));
+            assertThat(response.body().string(), is("{\"page\":" + page + "}"));
+        }
+
+        final Response echo = client.newCall(new Request.Builder()
+                .url(server.url("/echo"))
+                .post(RequestBody.create(MediaType.parse("text/plain"), "hello"))
+                .build()).execute();
+
+        assertThat(echo.code(), is(201));
+        assertThat(echo.body().string(), is("hello"));
+    }
+
+    @Test
+    public void generatedResponsesGetTheDefaultHeaders() throws IOException {
+
+        server.withDefaultHeader("X-Default", "yes");
+
+        server.respondWith(new MockResponse(), new BodyWriter() {
+            @Override
+            public void write(ParsedRequest request, BufferedSink body) throws IOException {
+                body.writeUtf8("written");
+            }
+        })
+                .ifRequestMatches()
+                .pathIs("/written");
+
+        server.respondWith(new ResponseGenerator() {
+            @Override
+            public MockResponse generate(ParsedRequest request) {
+                return new MockResponse().setBody("generated");
+            }
+        })
+                .ifRequestMatches()
+                .pathIs("/generated");
+
+        for (String path : new String[]{"/written", "/generated"}) {
+            final Response response = client.newCall(new Request.Builder()
+                    .url(server.url(path))
+                    .get()
+                    .build()).execute();
+
+            assertThat(response.header("X-Default"), is("yes"));
+            assertThat(response.body().string(), is(path.substring(1)));
+        }
+    }
+
+    @Test
+    public void passesWhenTheClientReusesItsConnection() throws IOException {
+
+        server.assertMaxConnections(1)
+                .assertConnectionReuse()
+                .addFixture(200, "body.json")
+                .reusable()
+                .ifRequestMatches()
+                .pathIs("/feed");
+
+        for (int i = 0; i < 3; i++) {
+            client.newCall(new Request.Builder()
+                    .url(server.url("/feed"))
+                    .get()
+                    .build()).execute().body().string();
+        }
+
+        assertThat(server.getConnectionStats().getConnectionCount(), is(1L));
+        assertThat(server.getConnectionStats().getMaxRequestsPerConnection(), is(3L));
+    }
+
+    @Test
+    public void failsWhenTheClientStopsReusingConnections() throws IOException {
+
+        exceptionRule.expect(RequestAssertionException.class);
+        exceptionRule.expectMessage(containsString("Expected at most 1 connections but there were "
+                + "3 requests on 3 connections"));
+
+        server.assertMaxConnections(1)
+                .addFixture(200, "body.json")
+                .reusable()
+                .ifRequestMatches()
+                .pathIs("/feed");
+
+        for (int i = 0; i < 3; i++) {
+            client.newCall(new Request.Builder()
+                    .url(server.url("/feed"))
+                    .header("Connection", "close")
+                    .get()
+                    .build()).execute().body().string();
+        }
+    }
+
+    @Test
+    public void failsOnTooManyRequestsWithinAWindow() throws IOException {
+
+        exceptionRule.expect(RequestAssertionException.class);
+        exceptionRule.expectMessage(containsString("Expected at most 2 requests to /config "
+                + "within 60000ms but 3 arrived"));
+
+        server.assertMaxRequests("/config", 2, 1, TimeUnit.MINUTES)
+                .addFixture(200, "body.json")
+                .reusable()
+                .ifRequestMatches()
+                .pathIs("/config");
+
+        for (int i = 0; i < 3; i++) {
+            client.newCall(new Request.Builder()
+                    .url(server.url("/config"))
+                    .get()
+                    .build()).execute().body().string();
+        }
+
+        assertThat(server.getTimings().getArrivals("/config", TimeUnit.MILLISECONDS).size(), is(3));
+    }
+
+    @Test
+    public void failsOnDuplicateRequests() throws IOException {
+
+        exceptionRule.expect(RequestAssertionException.class);
+        exceptionRule.expectMessage(containsString("GET /config?a=1&b=2 sent 2 times"));
+
+        server.withDuplicateDetection(1, TimeUnit.MINUTES, true)
+                .addFixture(200, "body.json")
+                .reusable()
+                .ifRequestMatches()
+                .pathIs("/config");
+
+        client.newCall(new Request.Builder()
+                .url(server.url("/config?a=1&b=2"))
+                .get()
+                .build()).execute().body().string();
+
+        client.newCall(new Request.Builder()
+                .url(server.url("/config?b=2&a=1"))
+                .get()
+                .build()).execute().body().string();
+    }
+
+    @Test
+    public void formMatchersDoNotMatchOtherBodies() throws IOException {
+
+        server.addResponse(new MockResponse().setBody("form"))
+                .ifRequestMatches()
+                .pathIs("/search")
+                .formContains("q", "shoes");
+
+        server.addResponse(new MockResponse().setBody("json"))
+                .ifRequestMatches()
+                .pathIs("/search");
+
+        final Response json = client.newCall(new Request.Builder()
+                .url(server.url("/search"))
+                .post(RequestBody.create(MediaType.parse("application/json"),
+                        "{\"q\":\"shoes\",\"discount\":\"10%\"}"))
+                .build()).execute();
+
+        assertThat(json.body().string(), is("json"));
+
+        final Response form = client.newCall(new Request.Builder()
+                .url(server.url("/search"))
+                .post(new FormBody.Builder().add("q", "shoes").build())
+                .build()).execute();
+
+        assertThat(form.body().string(), is("form"));
+    }
+
+    @Test
+    public void skipsFragmentsWhenLookingForTheGraphQlOperation() throws IOException {
+
+        server.addFixture(201, "body.json")
+                .ifRequestMatches()
+                .pathIs("/graphql")
+                .graphQlOperationNameIs("SaveUser")
+                .graphQlOperationTypeIs(GraphQlOperation.Type.MUTATION);
+
+        server.addFixture(200, "body.json")
+                .ifRequestMatches()
+                .pathIs("/rest");
+
+        final Response save = client.newCall(new Request.Builder()
+                .url(server.url("/graphql"))
+                .post(RequestBody.create(MediaType.parse("application/json"),
+                        "{\"query\": \"fragment UserFields on User { id name } "
+                                + "mutation SaveUser { save { ...UserFields } }\"}"))
+                .build()).execute();
+
+        // a request that is not GraphQL is still matched while operations are indexed
+        final Response rest = client.newCall(new Request.Builder()
+                .url(server.url("/rest?query=%zz"))
+                .get()
+                .build()).execute();
+
+        assertThat(save.code(), is(201));
+        assertThat(rest.code(), is(200));
+    }
 }
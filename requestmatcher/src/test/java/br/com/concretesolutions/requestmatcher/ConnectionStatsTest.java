@@ -0,0 +1,42 @@
+package br.com.concretesolutions.requestmatcher;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+public class ConnectionStatsTest {
+
+    private final ConnectionStats stats = new ConnectionStats();
+
+    @Test
+    public void countsConnectionsByTheirFirstRequest() {
+
+        record(0, 1, 2, 0);
+
+        assertThat(stats.getConnectionCount(), is(2L));
+        assertThat(stats.getMaxRequestsPerConnection(), is(3L));
+        assertThat(stats.getReuseRatio(), closeTo(0.5, 0.001));
+    }
+
+    @Test
+    public void connectionsOpenedBeforeTheTestOnlyCountItsRequests() {
+
+        stats.startOnUsedServer();
+
+        // a connection that carried 5 requests of earlier tests, and a new one
+        record(5, 6, 0, 1, 7);
+
+        assertThat(stats.getConnectionCount(), is(2L));
+        assertThat(stats.getRequestCount(), is(5L));
+        assertThat(stats.getMaxRequestsPerConnection(), is(3L));
+        assertThat(stats.getReuseRatio(), closeTo(0.6, 0.001));
+    }
+
+    private void record(int... sequenceNumbers) {
+        for (int sequenceNumber : sequenceNumbers) {
+            stats.record(sequenceNumber);
+        }
+    }
+}
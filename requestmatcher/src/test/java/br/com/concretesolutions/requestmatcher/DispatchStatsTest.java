@@ -0,0 +1,44 @@
+package br.com.concretesolutions.requestmatcher;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class DispatchStatsTest {
+
+    @Test
+    public void bucketsAreContiguous() {
+        for (long value = 0; value < 10_000; value++) {
+            final int index = DispatchStats.Histogram.indexOf(value);
+            assertThat(DispatchStats.Histogram.upperBoundOf(index), greaterThanOrEqualTo(value));
+            assertThat(index == 0 || DispatchStats.Histogram.upperBoundOf(index - 1) < value, is(true));
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinTheBucketError() {
+
+        final DispatchStats.Histogram histogram = new DispatchStats.Histogram();
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        assertThat(histogram.getCount(), is(1000L));
+        assertThat(histogram.getMax(), is(1000L));
+        assertThat(histogram.getPercentile(50), allOf(greaterThanOrEqualTo(500L), lessThanOrEqualTo(625L)));
+        assertThat(histogram.getPercentile(99), allOf(greaterThanOrEqualTo(990L), lessThanOrEqualTo(1000L)));
+        assertThat(histogram.getPercentile(100), is(1000L));
+    }
+
+    @Test
+    public void emptyHistogramIsZero() {
+        final DispatchStats.Histogram histogram = new DispatchStats.Histogram();
+        assertThat(histogram.getPercentile(99), is(0L));
+        assertThat(histogram.getMean(), is(0.0));
+    }
+}
@@ -0,0 +1,102 @@
+package br.com.concretesolutions.requestmatcher;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Headers;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DuplicateDetectorTest {
+
+    private final MatcherDispatcher dispatcher = new MatcherDispatcher();
+    private final DuplicateDetector detector = new DuplicateDetector(1, TimeUnit.MINUTES);
+    private Socket socket;
+
+    @Before
+    public void setUp() {
+        final InetAddress inetAddressMock = mock(InetAddress.class);
+        when(inetAddressMock.getHostName()).thenReturn("localhost");
+
+        socket = mock(Socket.class);
+        when(socket.getInetAddress()).thenReturn(inetAddressMock);
+
+        dispatcher.setDuplicateDetector(detector);
+    }
+
+    @Test
+    public void queryParametersInAnotherOrderAreTheSameRequest() {
+
+        dispatcher.dispatch(request("GET", "/config?lang=en&v=2", ""), 0);
+        dispatcher.dispatch(request("GET", "/config?v=2&lang=en", ""), 0);
+        dispatcher.dispatch(request("GET", "/config?lang=en&v=2", ""), 0);
+        dispatcher.dispatch(request("GET", "/config?lang=pt&v=2", ""), 0);
+
+        assertThat(detector.getDuplicates().size(), is(1));
+        assertThat(detector.getDuplicates(), hasEntry("GET /config?lang=en&v=2", 3));
+    }
+
+    @Test
+    public void requestsWithOtherBodiesAreNotDuplicates() {
+
+        dispatcher.dispatch(request("POST", "/events", "{\"id\":1}"), 0);
+        dispatcher.dispatch(request("POST", "/events", "{\"id\":2}"), 0);
+        dispatcher.dispatch(request("PUT", "/events", "{\"id\":2}"), 0);
+
+        assertThat(detector.getDuplicates().isEmpty(), is(true));
+
+        final RecordedRequest repeated = request("POST", "/events", "{\"id\":2}");
+        dispatcher.dispatch(repeated, 0);
+
+        assertThat(detector.getDuplicates().size(), is(1));
+        // fingerprinting doesn't consume the body
+        assertThat(repeated.getBody().readUtf8(), is("{\"id\":2}"));
+    }
+
+    @Test
+    public void requestsOutsideTheWindowAreNotDuplicates() {
+
+        final DuplicateDetector shortWindow = new DuplicateDetector(1, TimeUnit.MILLISECONDS);
+        final ParsedRequest first = ParsedRequest.of(request("GET", "/feed", ""));
+        final ParsedRequest second = ParsedRequest.of(request("GET", "/feed", ""));
+
+        shortWindow.record(first, 0);
+        shortWindow.record(second, TimeUnit.MILLISECONDS.toNanos(2));
+
+        assertThat(shortWindow.getDuplicates().isEmpty(), is(true));
+
+        shortWindow.record(first, TimeUnit.MILLISECONDS.toNanos(3));
+
+        assertThat(shortWindow.getDuplicates(), hasEntry("GET /feed", 2));
+    }
+
+    @Test
+    public void countsTheLongestEpisode() {
+
+        final DuplicateDetector shortWindow = new DuplicateDetector(1, TimeUnit.MILLISECONDS);
+        final ParsedRequest request = ParsedRequest.of(request("GET", "/feed", ""));
+
+        // episodes of 2, 3 and 2 requests
+        for (long micros : new long[]{0, 500, 10_000, 10_500, 11_000, 20_000, 20_500}) {
+            shortWindow.record(request, TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+
+        assertThat(shortWindow.getDuplicates(), hasEntry("GET /feed", 3));
+    }
+
+    private RecordedRequest request(String method, String path, String body) {
+        final Buffer buffer = new Buffer().writeUtf8(body);
+        return new RecordedRequest(method + " " + path + " HTTP/1.1", Headers.of(), null,
+                buffer.size(), buffer, 0, socket);
+    }
+}
@@ -0,0 +1,116 @@
+package br.com.concretesolutions.requestmatcher;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.Socket;
+
+import okhttp3.Headers;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FaultProfileTest {
+
+    private static final int REQUESTS = 1000;
+
+    private final MatcherDispatcher dispatcher = new MatcherDispatcher();
+    private Socket socket;
+
+    @Before
+    public void setUp() {
+        final InetAddress inetAddressMock = mock(InetAddress.class);
+        when(inetAddressMock.getHostName()).thenReturn("localhost");
+
+        socket = mock(Socket.class);
+        when(socket.getInetAddress()).thenReturn(inetAddressMock);
+    }
+
+    @Test
+    public void seededProfilesDrawTheSameFaults() {
+
+        final FaultProfile first = FaultProfile.builder()
+                .disconnect(10).stall(10).serverError(10).truncateBody(10).seed(7).build();
+        final FaultProfile second = FaultProfile.builder()
+                .disconnect(10).stall(10).serverError(10).truncateBody(10).seed(7).build();
+
+        int faults = 0;
+
+        for (int i = 0; i < REQUESTS; i++) {
+            final FaultProfile.Fault fault = first.next();
+            assertThat(second.next(), is(fault));
+
+            if (fault != null) {
+                faults++;
+            }
+        }
+
+        // 40% of the requests, give or take the randomness of the seed
+        assertThat(faults > REQUESTS * 0.3 && faults < REQUESTS * 0.5, is(true));
+    }
+
+    @Test
+    public void faultedRequestsDoNotConsumeTheStub() {
+
+        dispatcher.addStub(new MockResponse().setBody("ok"), new RequestMatchersGroup().pathIs("/pay"))
+                .setFaults(FaultProfile.builder().serverError(100, 502).build());
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(dispatcher.dispatch(get("/pay"), 0).getStatus(), containsString("502"));
+        }
+
+        assertThat(dispatcher.size(), is(1));
+        assertThat(dispatcher.getInjectedFaultCount(), is(3L));
+        assertThat(dispatcher.getInjectedFaultCount(FaultProfile.Fault.SERVER_ERROR), is(3L));
+        assertThat(dispatcher.getAssertionException(), is(nullValue()));
+    }
+
+    @Test
+    public void truncatedBodiesServeTheStubResponse() {
+
+        final MockResponse stubbed = new MockResponse().setBody("{\"items\":[]}");
+        dispatcher.addStub(stubbed, new RequestMatchersGroup().pathIs("/items"))
+                .setFaults(FaultProfile.builder().truncateBody(100).build());
+
+        final MockResponse response = dispatcher.dispatch(get("/items"), 0);
+
+        assertThat(response.getSocketPolicy(), is(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY));
+        assertThat(response.getBody().readUtf8(), is("{\"items\":[]}"));
+        assertThat(stubbed.getSocketPolicy(), is(SocketPolicy.KEEP_OPEN));
+    }
+
+    @Test
+    public void stubsWithoutFaultsUseTheDefaultProfile() {
+
+        dispatcher.setDefaultFaults(FaultProfile.builder().disconnect(100).build());
+        dispatcher.addStub(new MockResponse(), new RequestMatchersGroup().pathIs("/config"));
+
+        assertThat(dispatcher.dispatch(get("/config"), 0).getSocketPolicy(),
+                is(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+
+        dispatcher.setDefaultFaults(null);
+
+        assertThat(dispatcher.dispatch(get("/config"), 0).getSocketPolicy(),
+                is(SocketPolicy.KEEP_OPEN));
+        assertThat(dispatcher.size(), is(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void percentagesCannotAddUpToMoreThanAHundred() {
+        FaultProfile.builder().disconnect(60).stall(60).build();
+    }
+
+    private RecordedRequest get(String path) {
+        return new RecordedRequest("GET " + path + " HTTP/1.1", Headers.of(), null, 0,
+                new Buffer(), 0, socket);
+    }
+}
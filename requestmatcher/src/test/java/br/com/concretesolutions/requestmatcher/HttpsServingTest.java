@@ -0,0 +1,57 @@
+package br.com.concretesolutions.requestmatcher;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+public class HttpsServingTest {
+
+    @Rule
+    public final RequestMatcherRule server = new LocalTestRequestMatcherRule()
+            .withHttps()
+            .withProtocols(Protocol.HTTP_2, Protocol.HTTP_1_1);
+
+    private final OkHttpClient client = new OkHttpClient.Builder()
+            .sslSocketFactory(server.getSslSocketFactory(), server.getTrustManager())
+            .build();
+
+    @Test
+    public void servesFixturesOverHttps() throws IOException {
+
+        server.addFixture(200, "body.json")
+                .ifRequestMatches()
+                .pathIs("/secure");
+
+        assertThat(server.url("/secure").isHttps(), is(true));
+
+        final Response response = client.newCall(new Request.Builder()
+                .url(server.url("/secure"))
+                .get()
+                .build()).execute();
+
+        assertThat(response.code(), is(200));
+        assertThat(response.handshake(), is(notNullValue()));
+        response.body().close();
+    }
+
+    @Test
+    public void certificateIsSharedByEveryRule() {
+        assertThat(new LocalTestRequestMatcherRule().withHttps().getSslSocketFactory(),
+                is(server.getSslSocketFactory()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void pooledRulesCannotServeHttps() {
+        new LocalTestRequestMatcherRule(new MockWebServerPool()).withHttps();
+    }
+}
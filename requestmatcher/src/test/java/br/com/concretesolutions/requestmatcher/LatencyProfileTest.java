@@ -0,0 +1,83 @@
+package br.com.concretesolutions.requestmatcher;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class LatencyProfileTest {
+
+    @Test
+    public void drawsTheSameDelaysForTheSameSeed() {
+
+        final LatencyProfile first = LatencyProfile.builder()
+                .normalBodyDelay(200, 50, TimeUnit.MILLISECONDS)
+                .seed(42)
+                .build();
+        final LatencyProfile second = LatencyProfile.builder()
+                .normalBodyDelay(200, 50, TimeUnit.MILLISECONDS)
+                .seed(42)
+                .build();
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(first.nextBodyDelayNanos(), is(second.nextBodyDelayNanos()));
+        }
+    }
+
+    @Test
+    public void drawsUniformDelaysInRange() {
+
+        final LatencyProfile profile = LatencyProfile.builder()
+                .uniformBodyDelay(10, 20, TimeUnit.MILLISECONDS)
+                .build();
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(profile.nextBodyDelayNanos(), allOf(
+                    greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(10)),
+                    lessThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20))));
+        }
+    }
+
+    @Test
+    public void interpolatesBetweenRecordedPercentiles() {
+
+        final LatencyProfile profile = LatencyProfile.builder()
+                .bodyDelayPercentile(99, 900, TimeUnit.MILLISECONDS)
+                .bodyDelayPercentile(50, 100, TimeUnit.MILLISECONDS)
+                .seed(7)
+                .build();
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(profile.nextBodyDelayNanos(), allOf(
+                    greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100)),
+                    lessThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(900))));
+        }
+    }
+
+    @Test
+    public void appliesDelaysToACopyOfTheResponse() {
+
+        final MockResponse response = new MockResponse().setBody("body");
+        final MockResponse delayed = LatencyProfile.builder()
+                .headersDelay(50, TimeUnit.MILLISECONDS)
+                .uniformBodyDelay(100, 100, TimeUnit.MILLISECONDS)
+                .bytesPerSecond(1000)
+                .build()
+                .apply(response);
+
+        assertThat(delayed, not(sameInstance(response)));
+        assertThat(delayed.getHeadersDelay(TimeUnit.MILLISECONDS), is(50L));
+        assertThat(delayed.getBodyDelay(TimeUnit.MILLISECONDS), is(100L));
+        assertThat(delayed.getThrottleBytesPerPeriod(), is(100L));
+        assertThat(response.getBodyDelay(TimeUnit.MILLISECONDS), is(0L));
+    }
+}
@@ -0,0 +1,92 @@
+package br.com.concretesolutions.requestmatcher;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.Socket;
+
+import okhttp3.Headers;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+
+import br.com.concretesolutions.requestmatcher.exception.RequestAssertionException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Dispatches requests straight to a {@link MatcherDispatcher} in load target mode.
+ */
+public class LoadTargetDispatchTest {
+
+    private static final int SAMPLE_RATE = 100;
+    private static final int REQUESTS = 250;
+
+    private final MatcherDispatcher dispatcher = new MatcherDispatcher();
+    private Socket socket;
+
+    @Before
+    public void setUp() {
+        final InetAddress inetAddressMock = mock(InetAddress.class);
+        when(inetAddressMock.getHostName()).thenReturn("localhost");
+
+        socket = mock(Socket.class);
+        when(socket.getInetAddress()).thenReturn(inetAddressMock);
+
+        dispatcher.setLoadTarget(SAMPLE_RATE);
+    }
+
+    @Test
+    public void servesReusableStubsToEveryRequest() {
+
+        final MockResponse response = new MockResponse().setBody("{}");
+        dispatcher.addFixture(response).pathIs("/items").queriesContain("page", "1");
+        dispatcher.addFixture(new MockResponse().setResponseCode(201)).pathIs("/other");
+
+        final RecordedRequest request = get("/items?page=1");
+
+        for (int i = 0; i < REQUESTS; i++) {
+            assertThat(dispatcher.dispatch(request, 0), is(sameInstance(response)));
+        }
+
+        assertThat(dispatcher.getAssertionException(), is(nullValue()));
+        assertThat(dispatcher.getUnusedStubs().size(), is(1));
+    }
+
+    @Test
+    public void onlyDescribesSampledMisses() {
+
+        dispatcher.addFixture(new MockResponse()).pathIs("/items");
+
+        int described = 0;
+        RequestAssertionException last = null;
+
+        for (int i = 0; i < REQUESTS; i++) {
+            final MockResponse response = dispatcher.dispatch(get("/unknown"), 0);
+            assertThat(response.getSocketPolicy(), is(SocketPolicy.DISCONNECT_AT_END));
+
+            // every described miss replaces the reported exception
+            final RequestAssertionException current = dispatcher.getAssertionException();
+            if (current != last) {
+                described++;
+                last = current;
+            }
+        }
+
+        // the 1st, 101st and 201st misses
+        assertThat(described, is(3));
+        assertThat(dispatcher.getUnmatchedCount(), is((long) REQUESTS));
+    }
+
+    private RecordedRequest get(String path) {
+        return new RecordedRequest("GET " + path + " HTTP/1.1", Headers.of(), null, 0,
+                new Buffer(), 0, socket);
+    }
+}
@@ -0,0 +1,90 @@
+package br.com.concretesolutions.requestmatcher;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class MultiplexingPoolTest {
+
+    private static final int RULES = 50;
+
+    private final MockWebServerPool pool = MockWebServerPool.multiplexed();
+    private final OkHttpClient client = new OkHttpClient();
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void releasingANamespaceDrainsTheSharedQueue() throws Throwable {
+
+        for (int i = 0; i < RULES; i++) {
+
+            final RequestMatcherRule rule = new LocalTestRequestMatcherRule(pool);
+
+            rule.apply(new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+
+                    rule.addResponse(new MockResponse().setBody("ok"))
+                            .ifRequestMatches()
+                            .pathIs("/drained");
+
+                    final Response response = client.newCall(new Request.Builder()
+                            .url(rule.url("/drained"))
+                            .build()).execute();
+
+                    assertThat(response.code(), is(200));
+                    response.body().close();
+                }
+            }, Description.createTestDescription(MultiplexingPoolTest.class, "rule" + i))
+                    .evaluate();
+        }
+
+        final MockWebServer server = pool.acquire();
+
+        assertThat(pool.size(), is(1));
+        assertThat(server.getRequestCount(), is(RULES));
+        assertThat(server.takeRequest(0, TimeUnit.NANOSECONDS), is(nullValue()));
+    }
+
+    @Test
+    public void keepsTheRequestsOfRulesStillRunning() throws Exception {
+
+        final MockWebServer server = pool.acquire();
+        final String running = pool.newNamespace();
+        final String finished = pool.newNamespace();
+        pool.acquire();
+
+        client.newCall(new Request.Builder()
+                .url(server.url('/' + running + "/kept"))
+                .build()).execute().body().close();
+
+        pool.release(server, finished);
+
+        assertThat(server.takeRequest(0, TimeUnit.NANOSECONDS).getPath(),
+                is('/' + running + "/kept"));
+
+        client.newCall(new Request.Builder()
+                .url(server.url('/' + running + "/drained"))
+                .build()).execute().body().close();
+
+        pool.release(server, running);
+
+        assertThat(server.takeRequest(0, TimeUnit.NANOSECONDS), is(nullValue()));
+    }
+}
@@ -0,0 +1,55 @@
+package br.com.concretesolutions.requestmatcher;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.Socket;
+
+import okhttp3.Headers;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ParsedRequestTest {
+
+    private static final String DOCUMENT = "{\"query\": \"query GetUser { user { id } }\"}";
+
+    private Socket socket;
+
+    @Before
+    public void setUp() {
+        final InetAddress inetAddressMock = mock(InetAddress.class);
+        when(inetAddressMock.getHostName()).thenReturn("localhost");
+
+        socket = mock(Socket.class);
+        when(socket.getInetAddress()).thenReturn(inetAddressMock);
+    }
+
+    @Test
+    public void readsGraphQlFromJsonBodies() {
+
+        final ParsedRequest request = ParsedRequest.of(post("application/json; charset=utf-8"));
+
+        assertThat(request.getGraphQlOperation().getName(), is("GetUser"));
+    }
+
+    @Test
+    public void doesNotReadGraphQlFromOtherBodies() {
+
+        assertThat(ParsedRequest.of(post("text/plain")).getGraphQlOperation(), is(nullValue()));
+        assertThat(ParsedRequest.of(post(null)).getGraphQlOperation(), is(nullValue()));
+    }
+
+    private RecordedRequest post(String contentType) {
+        final Buffer body = new Buffer().writeUtf8(DOCUMENT);
+        return new RecordedRequest("POST /graphql HTTP/1.1",
+                contentType != null ? Headers.of("Content-Type", contentType) : Headers.of(),
+                null, body.size(), body, 0, socket);
+    }
+}
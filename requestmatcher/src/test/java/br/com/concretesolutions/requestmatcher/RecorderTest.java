@@ -0,0 +1,113 @@
+package br.com.concretesolutions.requestmatcher;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Okio;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class RecorderTest {
+
+    @Rule
+    public final MockWebServer upstream = new MockWebServer();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final OkHttpClient client = new OkHttpClient();
+
+    @Test
+    public void recordsUnmatchedRequestsAndWritesAnIndex() throws Throwable {
+
+        upstream.enqueue(new MockResponse()
+                .setResponseCode(202)
+                .addHeader("Content-Type", "application/json")
+                .setBody("{\"state\":\"PENDING\"}"));
+        upstream.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .addHeader("Content-Type", "application/json")
+                .setBody("{\"state\":\"DONE\"}"));
+        upstream.enqueue(new MockResponse().setResponseCode(201));
+
+        final RequestMatcherRule rule = new LocalTestRequestMatcherRule()
+                .withRecording(upstream.url("/api/"), folder.getRoot());
+
+        rule.apply(new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+
+                for (int i = 0; i < 2; i++) {
+                    final Response response = client.newCall(new Request.Builder()
+                            .url(rule.url("/jobs?id=42"))
+                            .get()
+                            .build()).execute();
+                    assertThat(response.header("Content-Type"), is("application/json"));
+                    response.body().close();
+                }
+
+                final Response created = client.newCall(new Request.Builder()
+                        .url(rule.url("/jobs"))
+                        .post(RequestBody.create(MediaType.parse("text/plain"), "new job"))
+                        .build()).execute();
+                assertThat(created.code(), is(201));
+                created.body().close();
+            }
+        }, Description.createTestDescription(RecorderTest.class, "poll")).evaluate();
+
+        final RecordedRequest first = upstream.takeRequest();
+        assertThat(first.getPath(), is("/api/jobs?id=42"));
+        upstream.takeRequest();
+        assertThat(upstream.takeRequest().getBody().readUtf8(), is("new job"));
+
+        final File recordings = new File(folder.getRoot(), "RecorderTest_poll");
+        final List<Recorder.Exchange> exchanges = Recorder.readIndex(new InputStreamReader(
+                new FileInputStream(new File(recordings, Recorder.INDEX_FILE)), "UTF-8"));
+
+        assertThat(exchanges.size(), is(3));
+        assertThat(exchanges.get(0).path, is("/jobs"));
+        assertThat(exchanges.get(0).queries, hasEntry("id", "42"));
+        assertThat(exchanges.get(0).status, is(202));
+        assertThat(exchanges.get(0).pathOrder, is(1));
+        assertThat(exchanges.get(1).pathOrder, is(2));
+        assertThat(exchanges.get(1).headers.get("Content-Type"), is("application/json"));
+        assertThat(exchanges.get(2).method, is("POST"));
+        assertThat(exchanges.get(2).pathOrder, is(0));
+        assertThat(exchanges.get(2).headers.get("Content-Length"), is(nullValue()));
+
+        assertThat(Okio.buffer(Okio.source(new File(recordings, exchanges.get(1).fixture)))
+                .readUtf8(), is("{\"state\":\"DONE\"}"));
+
+        final String stubs = Okio.buffer(Okio.source(new File(recordings, Recorder.STUBS_FILE)))
+                .readUtf8();
+        assertThat(stubs, containsString("\npackage br.com.concretesolutions.requestmatcher;\n"));
+        assertThat(stubs, containsString(
+                "import br.com.concretesolutions.requestmatcher.RequestMatcherRule;\n"
+                        + "import br.com.concretesolutions.requestmatcher.model.HttpMethod;\n"
+                        + "import okhttp3.mockwebserver.MockResponse;\n"
+                        + "import okio.Buffer;\n"));
+        assertThat(stubs, containsString(".pathIs(\"/jobs\")"));
+        assertThat(stubs, containsString(".queriesContain(\"id\", \"42\")"));
+        assertThat(stubs, containsString(".pathOrderIs(2)"));
+    }
+}
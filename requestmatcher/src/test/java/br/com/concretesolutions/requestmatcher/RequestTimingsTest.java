@@ -0,0 +1,91 @@
+package br.com.concretesolutions.requestmatcher;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+public class RequestTimingsTest {
+
+    private final RequestTimings timings = new RequestTimings();
+    private final long start = System.nanoTime();
+
+    @Test
+    public void findsTooManyRequestsInAnyWindow() {
+
+        timings.expectMaxRequests("/config", 2, TimeUnit.SECONDS.toNanos(1));
+
+        arrive("/config", 0, 900, 1_950, 2_100);
+
+        assertThat(timings.verify(), is(empty()));
+
+        arrive("/config", 2_200);
+
+        assertThat(timings.verify(), contains("Expected at most 2 requests to /config within "
+                + "1000ms but 3 arrived between 1950ms and 2200ms"));
+    }
+
+    @Test
+    public void findsRetriesWithoutBackoff() {
+
+        timings.expectMinSpacing("/pay", TimeUnit.MILLISECONDS.toNanos(100));
+
+        // added out of order, like concurrent requests can be
+        arrive("/pay", 400, 0, 100);
+
+        assertThat(timings.verify(), is(empty()));
+
+        arrive("/pay", 450);
+
+        assertThat(timings.verify(), contains("Expected requests to /pay at least 100ms apart "
+                + "but requests 3 and 4 arrived 50ms apart"));
+    }
+
+    @Test
+    public void findsFixturesServedAfterTheBudget() {
+
+        timings.expectServedWithin(TimeUnit.MILLISECONDS.toNanos(500));
+
+        assertThat(timings.verify(), is(empty()));
+
+        timings.served(start + TimeUnit.MILLISECONDS.toNanos(700));
+        timings.served(start + TimeUnit.MILLISECONDS.toNanos(300));
+
+        assertThat(timings.verify(), contains("Expected every fixture to be served within 500ms "
+                + "but the last one was served after 700ms"));
+    }
+
+    @Test
+    public void arrivalsAreRelativeToTheStartOfTheTest() {
+
+        arrive("/feed", 20, 10);
+
+        assertThat(timings.getArrivals("/feed", TimeUnit.MILLISECONDS), contains(10L, 20L));
+        assertThat(timings.getArrivals("/other", TimeUnit.MILLISECONDS), is(empty()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void windowsMustBePositive() {
+        new LocalTestRequestMatcherRule().assertMaxRequests("/feed", 1, 0, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void spacingMustBePositive() {
+        new LocalTestRequestMatcherRule().assertMinSpacing("/feed", -1, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void budgetMustBePositive() {
+        new LocalTestRequestMatcherRule().assertAllServedWithin(0, TimeUnit.SECONDS);
+    }
+
+    private void arrive(String path, long... millis) {
+        for (long arrival : millis) {
+            timings.arrived(path, start + TimeUnit.MILLISECONDS.toNanos(arrival));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package br.com.concretesolutions.requestmatcher;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import okio.Buffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+
+public class RequestUtilsTest {
+
+    @Test
+    public void canDecodeFormBody() {
+
+        final Buffer body = new Buffer().writeUtf8("name=john+doe&password=s3cr3t%26%3D&empty=&flag");
+        final Map<String, String> form = RequestUtils.buildFormMap(body);
+
+        assertThat(form, hasEntry("name", "john doe"));
+        assertThat(form, hasEntry("password", "s3cr3t&="));
+        assertThat(form, hasEntry("empty", ""));
+        assertThat(form, hasEntry("flag", ""));
+        assertThat(body.size(), is(47L));
+    }
+
+    @Test
+    public void joinsRepeatedFormKeys() {
+
+        final Buffer body = new Buffer().writeUtf8("id=1&id=2&id=%C3%A9");
+
+        assertThat(RequestUtils.buildFormMap(body), hasEntry("id", "1;2;\u00e9"));
+    }
+
+    @Test
+    public void malformedPercentEncodingIsNotAForm() {
+
+        assertThat(RequestUtils.buildFormMap(new Buffer().writeUtf8("{\"discount\":\"10%\"}")).isEmpty(),
+                is(true));
+        assertThat(RequestUtils.buildFormMap(new Buffer().writeUtf8("q=%zz")).isEmpty(), is(true));
+    }
+}
@@ -0,0 +1,78 @@
+package br.com.concretesolutions.requestmatcher;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.Socket;
+
+import okhttp3.Headers;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RoutingKeyDispatchTest {
+
+    private final MatcherDispatcher dispatcher = new MatcherDispatcher();
+    private Socket socket;
+
+    @Before
+    public void setUp() {
+        final InetAddress inetAddressMock = mock(InetAddress.class);
+        when(inetAddressMock.getHostName()).thenReturn("localhost");
+
+        socket = mock(Socket.class);
+        when(socket.getInetAddress()).thenReturn(inetAddressMock);
+    }
+
+    @Test
+    public void failingExtractorsAreReported() {
+
+        final IllegalArgumentException failure = new IllegalArgumentException("no tenant");
+        final RequestJournal journal = new RequestJournal(10, BodyRetention.none());
+        dispatcher.setJournal(journal);
+
+        dispatcher.setRoutingKeyExtractor(new RoutingKeyExtractor() {
+            @Override
+            public String extract(ParsedRequest request) {
+                throw failure;
+            }
+        });
+        dispatcher.addStub(new MockResponse(), new RequestMatchersGroup().routingKeyIs("a"));
+
+        final MockResponse response = dispatcher.dispatch(get("/tenant"), 0);
+
+        assertThat(response.getSocketPolicy(), is(SocketPolicy.DISCONNECT_AT_END));
+        assertThat(dispatcher.getAssertionException().getCause(),
+                is((Throwable) failure));
+        // the request is still recorded for verification
+        assertThat(journal.requestsTo("/tenant").size(), is(1));
+        assertThat(journal.getUnmatchedCount(), is(1L));
+    }
+
+    @Test
+    public void routingKeysWithoutAnExtractorAreReported() {
+
+        dispatcher.addStub(new MockResponse(), new RequestMatchersGroup().routingKeyIs("tenant-a"));
+
+        dispatcher.dispatch(get("/tenant"), 0);
+
+        assertThat(dispatcher.getAssertionException().getCause(),
+                instanceOf(IllegalStateException.class));
+        assertThat(dispatcher.getAssertionException().getMessage(),
+                containsString("routingKeyIs(\"tenant-a\") but there is no RoutingKeyExtractor"));
+    }
+
+    private RecordedRequest get(String path) {
+        return new RecordedRequest("GET " + path + " HTTP/1.1", Headers.of(), null, 0,
+                new Buffer(), 0, socket);
+    }
+}
@@ -0,0 +1,169 @@
+package br.com.concretesolutions.requestmatcher;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import okhttp3.Headers;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ScenarioDispatchTest {
+
+    private static final int THREADS = 8;
+
+    private final MatcherDispatcher dispatcher = new MatcherDispatcher();
+    private Socket socket;
+
+    @Before
+    public void setUp() {
+        final InetAddress inetAddressMock = mock(InetAddress.class);
+        when(inetAddressMock.getHostName()).thenReturn("localhost");
+
+        socket = mock(Socket.class);
+        when(socket.getInetAddress()).thenReturn(inetAddressMock);
+    }
+
+    @Test
+    public void onlyOneConcurrentRequestMovesTheState() throws Exception {
+
+        final MockResponse first = new MockResponse().setResponseCode(202);
+        final MockResponse after = new MockResponse().setResponseCode(200);
+
+        final MatcherDispatcher.ResponseWithMatcher firstStub =
+                dispatcher.addStub(first, new RequestMatchersGroup().pathIs("/job"));
+        firstStub.setReusable(true);
+        firstStub.setScenario("job", MatcherDispatcher.SCENARIO_STARTED);
+        firstStub.setNewState("created");
+
+        final MatcherDispatcher.ResponseWithMatcher afterStub =
+                dispatcher.addStub(after, new RequestMatchersGroup().pathIs("/job"));
+        afterStub.setReusable(true);
+        afterStub.setScenario("job", "created");
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final List<Future<Integer>> codes = new ArrayList<>();
+
+        for (int i = 0; i < THREADS; i++) {
+            codes.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    start.await();
+                    return code(dispatcher.dispatch(get("/job"), 0));
+                }
+            }));
+        }
+
+        start.countDown();
+
+        int created = 0;
+
+        for (Future<Integer> code : codes) {
+            if (code.get() == 202) {
+                created++;
+            } else {
+                assertThat(code.get(), is(200));
+            }
+        }
+
+        executor.shutdown();
+
+        assertThat(created, is(1));
+        assertThat(dispatcher.getScenarioState("job"), is("created"));
+        assertThat(dispatcher.getAssertionException(), is(nullValue()));
+    }
+
+    @Test
+    public void stubsOfOtherStatesAreNotEvaluated() {
+
+        dispatcher.addStub(new MockResponse(), new RequestMatchersGroup().pathIs("/poll"))
+                .setScenario("poll", "done");
+        dispatcher.setRecordingStats(true);
+
+        dispatcher.dispatch(get("/poll"), 0);
+
+        assertThat(dispatcher.getStats().getCandidatesPerRequest().getMax(), is(0L));
+        assertThat(dispatcher.getUnmatchedCount(), is(1L));
+    }
+
+    @Test
+    public void stubsPutInAScenarioAfterIndexingCheckTheState() {
+
+        final MatcherDispatcher.ResponseWithMatcher stub = dispatcher.addStub(
+                new MockResponse().setResponseCode(201), new RequestMatchersGroup().pathIs("/poll"));
+
+        // indexes the stub by its path
+        dispatcher.dispatch(get("/other"), 0);
+        stub.setScenario("poll", "done");
+
+        assertThat(dispatcher.dispatch(get("/poll"), 0).getSocketPolicy(),
+                is(SocketPolicy.DISCONNECT_AT_END));
+        assertThat(dispatcher.getUnmatchedCount(), is(2L));
+
+        dispatcher.setScenarioState("poll", "done");
+
+        assertThat(code(dispatcher.dispatch(get("/poll"), 0)), is(201));
+    }
+
+    @Test
+    public void aLostClaimIsNotAMissWhenAnotherStubServesTheRequest() {
+
+        dispatcher.setRecordingStats(true);
+
+        final MatcherDispatcher.ResponseWithMatcher lost = dispatcher.addStub(
+                new MockResponse().setResponseCode(201), new RequestMatchersGroup().pathIs("/poll"));
+        final MatcherDispatcher.ResponseWithMatcher fallback = dispatcher.addStub(
+                new MockResponse().setResponseCode(202), new RequestMatchersGroup());
+        fallback.setReusable(true);
+
+        // indexes both, then the first one matches /poll but can't move the scenario
+        dispatcher.dispatch(get("/other"), 0);
+        lost.setScenario("poll", "done");
+
+        assertThat(code(dispatcher.dispatch(get("/poll"), 0)), is(202));
+        assertThat(lost.misses.get(), is(0L));
+        assertThat(lost.hits.get(), is(0L));
+    }
+
+    @Test
+    public void aLostClaimIsAMissWhenNothingServesTheRequest() {
+
+        dispatcher.setRecordingStats(true);
+
+        final MatcherDispatcher.ResponseWithMatcher lost = dispatcher.addStub(
+                new MockResponse(), new RequestMatchersGroup().pathIs("/poll"));
+
+        dispatcher.dispatch(get("/other"), 0);
+        lost.setScenario("poll", "done");
+        dispatcher.dispatch(get("/poll"), 0);
+
+        assertThat(lost.misses.get(), is(1L));
+    }
+
+    private static int code(MockResponse response) {
+        return Integer.parseInt(response.getStatus().split(" ")[1]);
+    }
+
+    private RecordedRequest get(String path) {
+        return new RecordedRequest("GET " + path + " HTTP/1.1", Headers.of(), null, 0,
+                new Buffer(), 0, socket);
+    }
+}
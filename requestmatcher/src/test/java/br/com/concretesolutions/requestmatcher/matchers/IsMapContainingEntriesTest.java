@@ -0,0 +1,49 @@
+package br.com.concretesolutions.requestmatcher.matchers;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static br.com.concretesolutions.requestmatcher.matchers.IsMapContainingEntries.hasEntries;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class IsMapContainingEntriesTest {
+
+    @Test
+    public void matchesEveryExpectedEntryIgnoringOtherKeys() {
+
+        final Map<String, String> actual = new HashMap<>();
+        actual.put("page", "2");
+        actual.put("size", "20");
+        actual.put("sort", "name");
+
+        assertThat(hasEntries("page", "2").put("size", "20").matches(actual), is(true));
+        assertThat(hasEntries("page", "2").put("size", "10").matches(actual), is(false));
+        assertThat(hasEntries("filter", "all").matches(actual), is(false));
+    }
+
+    @Test
+    public void keepsEveryEntryOfARepeatedKey() {
+
+        final Map<String, String> actual = new HashMap<>();
+        actual.put("page", "2");
+
+        assertThat(hasEntries("page", "2").put("page", "2").matches(actual), is(true));
+        // the second expectation doesn't replace the first one
+        assertThat(hasEntries("page", "3").put("page", "2").matches(actual), is(false));
+    }
+
+    @Test
+    public void nullValuesOnlyMatchKeysMappedToNull() {
+
+        final Map<String, String> actual = new HashMap<>();
+        actual.put("flag", null);
+        actual.put("page", "2");
+
+        assertThat(hasEntries("flag", null).matches(actual), is(true));
+        assertThat(hasEntries("page", null).matches(actual), is(false));
+        assertThat(hasEntries("missing", null).matches(actual), is(false));
+    }
+}
@@ -0,0 +1,25 @@
+package br.com.concretesolutions.requestmatcher.matchers;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class JsonPathCacheTest {
+
+    @Test
+    public void compilesEachExpressionOnlyOnce() {
+        assertThat(JsonPathCache.compile("$.a.b"), sameInstance(JsonPathCache.compile("$.a.b")));
+    }
+
+    @Test
+    public void isBounded() {
+
+        for (int i = 0; i < JsonPathCache.MAX_SIZE * 2; i++) {
+            JsonPathCache.compile("$.path" + i);
+        }
+
+        assertThat(JsonPathCache.size(), lessThanOrEqualTo(JsonPathCache.MAX_SIZE));
+    }
+}
@@ -0,0 +1,18 @@
+package br.com.concretesolutions.requestmatcher.test;
+
+import org.junit.ClassRule;
+
+import br.com.concretesolutions.requestmatcher.LocalTestRequestMatcherRule;
+import br.com.concretesolutions.requestmatcher.MockWebServerPool;
+import br.com.concretesolutions.requestmatcher.RequestMatcherRule;
+
+public class MultiplexedRequestMatcherRuleTest extends RequestMatcherRuleTest {
+
+    @ClassRule
+    public static final MockWebServerPool POOL = MockWebServerPool.multiplexed();
+
+    @Override
+    protected RequestMatcherRule getRequestMatcherRule() {
+        return new LocalTestRequestMatcherRule(POOL);
+    }
+}
@@ -0,0 +1,13 @@
+package br.com.concretesolutions.requestmatcher.test;
+
+import br.com.concretesolutions.requestmatcher.LocalTestRequestMatcherRule;
+import br.com.concretesolutions.requestmatcher.MockWebServerPool;
+import br.com.concretesolutions.requestmatcher.RequestMatcherRule;
+
+public class PooledRequestMatcherRuleTest extends RequestMatcherRuleTest {
+
+    @Override
+    protected RequestMatcherRule getRequestMatcherRule() {
+        return new LocalTestRequestMatcherRule(MockWebServerPool.shared());
+    }
+}